@@ -1,8 +1,10 @@
 package actions;
 
 import algorithms.Algorithm;
+import algorithms.AlgorithmExecutor;
 import algorithms.RandomClassifier;
 import dataprocessors.AppData;
+import dataprocessors.TSDProcessor;
 import dialogs.ExitWhileUnfinishedDialog;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
@@ -80,6 +82,8 @@ public final class AppActions implements ActionComponent {
             }
             if (!isUnsaved.get() || promptToSave()) {
                 AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
+                ((AppData) applicationTemplate.getDataComponent()).cancelRun();
+                ((AppData) applicationTemplate.getDataComponent()).resetSource();
                 applicationTemplate.getDataComponent().clear();
                 applicationTemplate.getUIComponent().clear();
                 dataFilePath = null;
@@ -104,22 +108,25 @@ public final class AppActions implements ActionComponent {
         }
         try {
             AtomicBoolean hadAnError = ((AppData) applicationTemplate.getDataComponent()).hadAnError();
-            applicationTemplate.getDataComponent().clear();
             TextArea textArea = ((AppUI) applicationTemplate.getUIComponent()).getTextArea();
-            ((AppData) applicationTemplate.getDataComponent()).getProcessor().processString(textArea.getText());
-            int duplicate = ((AppData) applicationTemplate.getDataComponent()).checkForDuplicates(textArea.getText());
-            if (duplicate != -1) { // duplicate error
-                List<String> lines = Arrays.asList(textArea.getText().split(System.lineSeparator()));
+            AppData dataComponent = (AppData) applicationTemplate.getDataComponent();
+            try {
+                dataComponent.reloadProcessor();
+                hadAnError.set(false);
+            } catch (TSDProcessor.InvalidLineException e) {
+                if (!e.isDuplicate())
+                    throw e;
                 String errLoadTitle = applicationTemplate.manager.getPropertyValue(LOAD_ERROR_TITLE.name());
                 String errDupMsg = applicationTemplate.manager.getPropertyValue(DUPLICATE_ERR_MSG.name());
-                String errDupCont = (duplicate+1) + System.lineSeparator() + lines.get(duplicate);
+                String duplicateLine = AppData.duplicateLine(e, dataComponent.isPreviewingFile() ? null : textArea.getText());
+                String errDupCont = e.getLineNumber() + System.lineSeparator() + duplicateLine;
                 ErrorDialog errorDialog = ErrorDialog.getDialog();
                 errorDialog.show(errLoadTitle, errDupMsg + errDupCont);
                 ((AppUI) applicationTemplate.getUIComponent()).getSaveButton().setDisable(true);
                 hadAnError.set(true);
                 return;
             }
-            else if (isSaved() && !hadAnError.get()) {
+            if (isSaved() && !hadAnError.get()) {
                 save();
             } else if (!isSaved() && !hadAnError.get()){
                 promptToSave();
@@ -179,7 +186,9 @@ public final class AppActions implements ActionComponent {
             FileChooser fileChooser = new FileChooser();
             String tsdFullName = applicationTemplate.manager.getPropertyValue(TSD_FULL_NAME.name());
             String tsdExt = applicationTemplate.manager.getPropertyValue(TSD_EXT.name());
-            FileChooser.ExtensionFilter extensionFilter = new FileChooser.ExtensionFilter(tsdFullName, tsdExt);
+            String tsdGzExt = applicationTemplate.manager.getPropertyValue(TSD_GZ_EXT.name());
+            String tsdDeflateExt = applicationTemplate.manager.getPropertyValue(TSD_DEFLATE_EXT.name());
+            FileChooser.ExtensionFilter extensionFilter = new FileChooser.ExtensionFilter(tsdFullName, tsdExt, tsdGzExt, tsdDeflateExt);
             fileChooser.getExtensionFilters().add(extensionFilter);
             String dataDirPath = SEPARATOR + applicationTemplate.manager.getPropertyValue(DATA_RESOURCE_PATH.name());
             URL dataDirURL = getClass().getResource(dataDirPath);
@@ -231,7 +240,7 @@ public final class AppActions implements ActionComponent {
                         return;
                     }
                     if (selectedOption.name().equalsIgnoreCase(ExitWhileUnfinishedDialog.Option.EXIT.name())) {
-                        System.exit(0);
+                        exit();
                     }
                 }
                 // algorithm has finished running
@@ -239,13 +248,13 @@ public final class AppActions implements ActionComponent {
                     if (isUnsaved.get()) { promptToSave(); }
                     else { save(); }
                 }
-                System.exit(0);
+                exit();
             }
             // algorithm has never been selected | start of app
             else {
                 if (isUnsaved.get()) { promptToSave(); }
                 else { save(); }
-                System.exit(0);
+                exit();
             }
         } catch (IOException e) { errorHandlingHelper(); }
     }
@@ -338,6 +347,11 @@ public final class AppActions implements ActionComponent {
         isUnsaved.set(false);
     }
 
+    /** Exits once any run has been cancelled and the files being written are done. */
+    private void exit() {
+        AlgorithmExecutor.getExecutor().exit();
+    }
+
     private void errorHandlingHelper() {
         ErrorDialog     dialog   = (ErrorDialog) applicationTemplate.getDialog(Dialog.DialogType.ERROR);
         PropertyManager manager  = applicationTemplate.manager;
@@ -14,4 +14,23 @@ public interface Algorithm extends Runnable {
     boolean tocontinue();
 
     boolean finishedRunning();
+
+    /** @return the seed of the run's random numbers, with which the run is repeated exactly on the same data */
+    long getSeed();
+
+    /** @return the state of a step-mode run, through which the run goes on by steps */
+    StepControl getSteps();
+
+    /**
+     * Prepares a run that its caller drives one {@link #iterate() iteration} at a time, instead of {@link #run()}, such
+     * as a run of the multi-run workspace. Such a run shows nothing in the main window.
+     */
+    void prepare();
+
+    /**
+     * Runs one iteration of a {@link #prepare() prepared} run.
+     *
+     * @return whether the run has converged, after which further iterations change nothing
+     */
+    boolean iterate();
 }
\ No newline at end of file
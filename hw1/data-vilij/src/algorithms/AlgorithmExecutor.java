@@ -0,0 +1,102 @@
+package algorithms;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the algorithms, and the jobs that wait on files, on threads that are kept and reused rather than created for
+ * every run. The runs share a bounded pool of as many threads as there are processors, so that concurrent runs cannot
+ * oversubscribe the machine; the iterations of a run may still spread over the common fork-join pool. The threads of
+ * the runs are kept however long they are idle, so that starting a run never creates one. The jobs that mostly wait on
+ * I/O get threads of their own, which are created as needed and dropped after a minute idle.
+ * <p>
+ * A run keeps its thread for as long as it lasts, including while it waits: a run in step mode holds one between its
+ * steps, and a paused run until it is resumed or cancelled. The runs of the other windows, such as a sweep, then share
+ * the remaining threads, and queue for them once they are all held.
+ * <p>
+ * A run is cancelled through its {@link Future}, which interrupts its thread: the algorithms check for an interrupt
+ * between iterations, and wake up from their waits, so that a cancelled run ends within an iteration. All the threads
+ * are daemons, and none of them outlives the application.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public final class AlgorithmExecutor {
+
+    private static final long SHUTDOWN_MILLIS = 2000;
+
+    private static AlgorithmExecutor executor;
+
+    private final ThreadPoolExecutor compute;
+    private final ExecutorService    io;
+
+    private AlgorithmExecutor() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        compute = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                                         daemons("algorithm-run-"));
+        compute.prestartAllCoreThreads();
+        io = Executors.newCachedThreadPool(daemons("algorithm-io-"));
+    }
+
+    public static synchronized AlgorithmExecutor getExecutor() {
+        if (executor == null)
+            executor = new AlgorithmExecutor();
+        return executor;
+    }
+
+    private static ThreadFactory daemons(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Starts a run of an algorithm, which is either the {@link Algorithm} itself or a task that drives its iterations.
+     *
+     * @return the run, which is done once the algorithm returns, and which {@link Future#cancel(boolean) cancel(true)}
+     * ends at the next iteration
+     */
+    public Future<?> run(Runnable run) { return compute.submit(run); }
+
+    /** Starts a job that mostly waits on I/O, such as writing a file. */
+    public Future<?> submitIO(Runnable job) { return io.submit(job); }
+
+    /** Cancels every run before the application exits, giving the runs and the I/O jobs a moment to end. */
+    public void shutdown() { shutdown(SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS); }
+
+    /**
+     * Exits the application once it has {@link #shutdown() shut down}, which is waited for on a thread of its own, so
+     * that the UI thread, which the cancelled runs may still post their last frames to, is not held meanwhile.
+     */
+    public void exit() {
+        Thread exit = new Thread(() -> {
+            shutdown();
+            System.exit(0);
+        }, "algorithm-exit");
+        exit.start();
+    }
+
+    /**
+     * Cancels every run, and waits up to the timeout for the runs to end and for the I/O jobs to finish. No job can
+     * be started afterwards.
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        compute.shutdownNow();
+        io.shutdown();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            compute.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            io.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package algorithms;
+
+import dataprocessors.AppData;
+import javafx.application.Platform;
+import settings.AppPropertyTypes;
+import ui.AppUI;
+import ui.FrameSampler;
+import vilij.components.ErrorDialog;
+import vilij.templates.ApplicationTemplate;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Runs an algorithm in the main window, on the thread that calls {@link #run(boolean)}: either continuously, showing
+ * its state every update interval, or by steps of the update interval, one for each click of the run button, which asks
+ * the algorithm's {@link StepControl} for another step. Either run can be paused and resumed between two iterations
+ * through the same {@link StepControl}. The algorithm only provides its iterations, through
+ * {@link Algorithm#prepare()} and {@link Algorithm#iterate()}, and the frames that show its state on the chart; the
+ * runner keeps the controls of the workspace in step with the run.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+final class AlgorithmRunner {
+
+    private static final long FRAME_MILLIS = 500; // how long each frame is shown, unless the run is at full speed
+
+    private final Algorithm           algorithm;
+    private final ApplicationTemplate applicationTemplate;
+    private final Supplier<Runnable>  frames;
+    private final AtomicBoolean       finishedRunning = new AtomicBoolean(true);
+
+    /**
+     * @param frames makes a rendering of the algorithm's state as it is when asked, to be run on the UI thread, which
+     *               the iterations that run in the meantime do not affect
+     */
+    AlgorithmRunner(Algorithm algorithm, ApplicationTemplate applicationTemplate, Supplier<Runnable> frames) {
+        this.algorithm = algorithm;
+        this.applicationTemplate = applicationTemplate;
+        this.frames = frames;
+    }
+
+    /** A runner of a clusterer, whose frames show the instances with the labels of their clusters. */
+    AlgorithmRunner(Clusterer clusterer, ApplicationTemplate applicationTemplate) {
+        this(clusterer, applicationTemplate, () -> {
+            DataSet snapshot = clusterer.labelSnapshot();
+            return () -> ((AppData) applicationTemplate.getDataComponent()).displayLabels(snapshot);
+        });
+    }
+
+    boolean finishedRunning() { return finishedRunning.get(); }
+
+    /**
+     * Shows the data, prepares the algorithm, and runs it continuously or by steps.
+     *
+     * @param fullSpeed whether a continuous run iterates without pausing for the chart, which shows its latest state
+     *                  through a {@link FrameSampler}
+     */
+    void run(boolean fullSpeed) { run(fullSpeed, true); }
+
+    /**
+     * @param showData whether the data is shown until the first frame, rather than an empty chart, which spares
+     *                 drawing data too large to be shown in full
+     */
+    void run(boolean fullSpeed, boolean showData) {
+        Platform.setImplicitExit(false);
+        showData(showData);
+        algorithm.prepare();
+        runSteps(fullSpeed);
+    }
+
+    /** Clears the chart, and shows the data as it was loaded if asked to, until the first frame of the run. */
+    private void showData(boolean showData) {
+        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
+        AppData dataComponent = ((AppData) applicationTemplate.getDataComponent());
+        String nullStroke = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL_STROKE.name());
+        Platform.runLater(() -> {
+            uiComponent.clearChart();
+            if (!showData)
+                return;
+            dataComponent.getProcessor().toChartData(uiComponent.getChart());
+            uiComponent.getChart().getData().forEach(series -> series.getNode().setStyle(nullStroke));
+        });
+    }
+
+    /**
+     * Runs the iterations as the algorithm's {@link StepControl} lets it: a continuous run is asked for all of its
+     * iterations in one step, and a step-mode run for a step of the update interval at each click of the run button.
+     * Between the steps, and while the run is paused, this thread waits with the algorithm's state as it is, so that a
+     * step costs only its own iterations. The state a run paused in is always shown.
+     */
+    private void runSteps(boolean fullSpeed) {
+        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
+        StepControl steps = algorithm.getSteps();
+        boolean continuous = algorithm.tocontinue();
+        int maxIterations = algorithm.getMaxIterations();
+        int updateInterval = algorithm.getUpdateInterval();
+        // a step-mode run ends with its last full step
+        int lastIteration = continuous ? maxIterations : maxIterations - maxIterations % updateInterval;
+        if (continuous)
+            steps.step(maxIterations);
+        FrameSampler sampler = continuous && fullSpeed ? FrameSampler.started() : null;
+        finishedRunning.set(false);
+        boolean ended = lastIteration == 0;
+        boolean stepping = false;
+        int convergedAt = 0;
+        try {
+            while (!ended && steps.awaitIteration()) {
+                if (!stepping) {
+                    stepping = true;
+                    Platform.runLater(() -> {
+                        uiComponent.getScrnshotButton().setDisable(true);
+                        uiComponent.getRunButton().setDisable(true);
+                        uiComponent.getToggle().setDisable(true);
+                        uiComponent.setConfigButtonsDisabled(true);
+                        uiComponent.showPauseButton();
+                    });
+                }
+                boolean converged = algorithm.iterate();
+                boolean paused = steps.completeIteration();
+                int iteration = steps.getIteration();
+                if (converged)
+                    convergedAt = iteration;
+                ended = converged || iteration >= lastIteration;
+                if (!ended && !paused && iteration % updateInterval != 0)
+                    continue;
+                if (sampler == null) {
+                    System.out.printf("Iteration number %d%n", iteration);
+                    Platform.runLater(frames.get());
+                    Thread.sleep(FRAME_MILLIS);
+                } else if (!ended && (paused || sampler.isDue())) { // only the frames that will be shown are made
+                    System.out.printf("Iteration number %d%n", iteration);
+                    sampler.publish(frames.get());
+                }
+                if (paused && !ended) {
+                    stepping = false;
+                    boolean resumable = steps.canResume(); // paused within a step, rather than at its end
+                    Platform.runLater(() -> {
+                        uiComponent.getScrnshotButton().setDisable(false);
+                        if (resumable) {
+                            uiComponent.showResumeButton();
+                        } else {
+                            uiComponent.hidePauseButton();
+                            uiComponent.getRunButton().setDisable(false);
+                        }
+                    });
+                }
+            }
+            if (sampler != null && ended) {
+                System.out.printf("Iteration number %d%n", steps.getIteration());
+                sampler.finish(frames.get());
+            } else if (sampler != null) {
+                Platform.runLater(sampler::stop);
+            }
+        } catch (InterruptedException e) { // the run was cancelled
+            if (sampler != null)
+                Platform.runLater(sampler::stop);
+        }
+        steps.finish();
+        if (convergedAt != 0)
+            reportConvergence(convergedAt);
+        if (ended || continuous) {
+            ended();
+        } else { // the run was ended before its last step
+            Platform.runLater(() -> {
+                uiComponent.getToggle().setDisable(false);
+                uiComponent.setConfigButtonsDisabled(false);
+                uiComponent.hidePauseButton();
+            });
+            finishedRunning.set(true);
+        }
+    }
+
+    /** Puts the workspace back as it is before a run, with the algorithm types shown for the next run. */
+    private void ended() {
+        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
+        Platform.runLater(() -> {
+            uiComponent.getScrnshotButton().setDisable(false);
+            uiComponent.getToggle().setDisable(false);
+            uiComponent.resetAlgorithmSelection();
+        });
+        finishedRunning.set(true);
+    }
+
+    private void reportConvergence(int iteration) {
+        String title = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.CONVERGED_TITLE.name());
+        String msg = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.CONVERGED_MSG.name());
+        Platform.runLater(() -> ErrorDialog.getDialog().show(title, String.format(msg, iteration)));
+    }
+}
@@ -0,0 +1,38 @@
+package algorithms;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a task on a range of blocks on a {@link ForkJoinPool}, splitting it in halves down to single blocks. The
+ * algorithms that work on blocks of the data in parallel share it: each block is given to the task by its index, so a
+ * task that writes its results by block index gets the same results however the blocks are scheduled.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+final class BlockTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int         from;
+    private final int         to;
+    private final IntConsumer task;
+
+    /** A task on the blocks from <code>from</code> (inclusive) to <code>to</code> (exclusive), at least one. */
+    BlockTask(int from, int to, IntConsumer task) {
+        this.from = from;
+        this.to = to;
+        this.task = task;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from == 1) {
+            task.accept(from);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new BlockTask(from, mid, task), new BlockTask(mid, to, task));
+    }
+}
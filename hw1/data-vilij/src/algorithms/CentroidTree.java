@@ -0,0 +1,157 @@
+package algorithms;
+
+/**
+ * A 2-d tree over a range of centroids, which finds the centroid closest to a location without measuring the distance
+ * to every centroid. Each node splits its centroids at their median along the axis over which they spread the most,
+ * down to small leaves that are scanned, and a search skips every subtree on the far side of a split that is already
+ * farther than the closest centroid found.
+ * <p>
+ * The tree reads the centroids from the arrays it is given, so it must be built again whenever they move. Distances
+ * are computed by {@link DistanceKernels} as by a linear scan, and equally close centroids go to the one of lowest
+ * index, so a search finds exactly the centroid that a linear scan would.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+final class CentroidTree {
+
+    /** Below this many centroids, a linear scan is faster than building and searching a tree. */
+    static final int MIN_CENTROIDS = 96;
+    /** Ranges of at most this many centroids are leaves, which are scanned rather than split further. */
+    private static final int LEAF_SIZE = 8;
+
+    private final double[]  xs;
+    private final double[]  ys;
+    private final int[]     order;     // the centroids in tree order: each range has its root in its middle
+    private final boolean[] splitsOnX; // the axis of the root in each position
+
+    /** Builds the tree over all the centroids in the arrays. */
+    CentroidTree(double[] xs, double[] ys) { this(xs, ys, 0, xs.length); }
+
+    /** Builds the tree over the centroids from index <code>from</code> (inclusive) to <code>to</code> (exclusive). */
+    CentroidTree(double[] xs, double[] ys, int from, int to) {
+        this.xs = xs;
+        this.ys = ys;
+        this.order = new int[to - from];
+        this.splitsOnX = new boolean[order.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = from + i;
+        build(0, order.length);
+    }
+
+    /** @return a new search of this tree, to be used by a single thread */
+    Query query(boolean withSecond) { return new Query(withSecond); }
+
+    private void build(int lo, int hi) {
+        if (hi - lo <= LEAF_SIZE)
+            return;
+        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = lo; i < hi; i++) {
+            minX = Math.min(minX, xs[order[i]]);
+            maxX = Math.max(maxX, xs[order[i]]);
+            minY = Math.min(minY, ys[order[i]]);
+            maxY = Math.max(maxY, ys[order[i]]);
+        }
+        int     mid = (lo + hi) >>> 1;
+        boolean onX = maxX - minX >= maxY - minY;
+        select(lo, hi, mid, onX ? xs : ys);
+        splitsOnX[mid] = onX;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    /** Reorders the range so that the centroid at <code>k</code> has no greater coordinate before it and no smaller after. */
+    private void select(int lo, int hi, int k, double[] coordinates) {
+        hi--;
+        while (lo < hi) {
+            double pivot = coordinates[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coordinates[order[i]] < pivot)
+                    i++;
+                while (coordinates[order[j]] > pivot)
+                    j--;
+                if (i <= j) {
+                    int swapped = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swapped;
+                }
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * A search for the closest centroid of one location at a time, which can also track the distance to the second
+     * closest one.
+     */
+    final class Query {
+
+        private final boolean withSecond;
+        private double        x;
+        private double        y;
+        private int           nearest;
+        private double        distance;
+        private double        secondDistance;
+
+        private Query(boolean withSecond) { this.withSecond = withSecond; }
+
+        /** Searches for the centroid closest to the location. */
+        void find(double x, double y) {
+            this.x = x;
+            this.y = y;
+            nearest = -1;
+            distance = secondDistance = Double.MAX_VALUE;
+            search(0, order.length);
+        }
+
+        /** @return the index of the closest centroid found by the last search */
+        int nearest() { return nearest; }
+
+        /** @return the squared distance to the closest centroid */
+        double distance() { return distance; }
+
+        /** @return the squared distance to the second closest centroid, if the search tracks it */
+        double secondDistance() { return secondDistance; }
+
+        private void search(int lo, int hi) {
+            if (hi - lo <= LEAF_SIZE) {
+                for (int i = lo; i < hi; i++) {
+                    int c = order[i];
+                    offer(c, DistanceKernels.distance2(xs[c], ys[c], x, y));
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            int c   = order[mid];
+            offer(c, DistanceKernels.distance2(xs[c], ys[c], x, y));
+            double offset = splitsOnX[mid] ? x - xs[c] : y - ys[c]; // of the location from the split
+            if (offset < 0) {
+                search(lo, mid);
+                if (offset * offset <= bound())
+                    search(mid + 1, hi);
+            } else {
+                search(mid + 1, hi);
+                if (offset * offset <= bound())
+                    search(lo, mid);
+            }
+        }
+
+        private void offer(int c, double d) {
+            if (d < distance || (d == distance && c < nearest)) {
+                secondDistance = distance;
+                distance = d;
+                nearest = c;
+            } else if (d < secondDistance)
+                secondDistance = d;
+        }
+
+        private double bound() { return withSecond ? secondDistance : distance; }
+    }
+}
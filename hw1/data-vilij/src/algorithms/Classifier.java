@@ -20,6 +20,25 @@ public abstract class Classifier implements Algorithm {
      */
     protected List<Integer> output;
 
+    protected RandomStreams randomStreams = new RandomStreams();
+    protected final StepControl steps = new StepControl();
+    protected boolean fullSpeed; // whether a continuous run shows its latest state without pausing for it
+
     public List<Integer> getOutput() { return output; }
 
+    @Override
+    public StepControl getSteps() { return steps; }
+
+    /** Seeds the random numbers of this classifier, so that a run with the same seed and data is repeated exactly. */
+    public void setSeed(long seed) { this.randomStreams = new RandomStreams(seed); }
+
+    @Override
+    public long getSeed() { return randomStreams.getSeed(); }
+
+    /**
+     * Sets whether a continuous run iterates at full speed, with the chart showing its latest state as often as the UI
+     * can render it, rather than pausing at every update interval for the chart to catch up.
+     */
+    public void setFullSpeed(boolean fullSpeed) { this.fullSpeed = fullSpeed; }
+
 }
\ No newline at end of file
@@ -6,13 +6,47 @@ package algorithms;
 public abstract class Clusterer implements Algorithm {
 
     protected final int numberOfClusters;
+    protected double tolerance = 0; // how far the centroids may still move once converged, if this clusterer converges
+    protected RandomStreams randomStreams = new RandomStreams();
+    protected final StepControl steps = new StepControl();
+    protected boolean fullSpeed; // whether a continuous run shows its latest state without pausing for it
 
     public int getNumberOfClusters() { return numberOfClusters; }
 
-    public Clusterer(int k) {
+    /**
+     * @return the labels of the instances as the run has them now, in a data set that the later iterations of the run
+     * do not change
+     */
+    public abstract DataSet labelSnapshot();
+
+    @Override
+    public StepControl getSteps() { return steps; }
+
+    /** Sets the convergence tolerance, which clusterers that do not converge ignore. */
+    public void setTolerance(double tolerance) { this.tolerance = tolerance; }
+
+    /** Seeds the random numbers of this clusterer, so that a run with the same seed and data is repeated exactly. */
+    public void setSeed(long seed) { this.randomStreams = new RandomStreams(seed); }
+
+    @Override
+    public long getSeed() { return randomStreams.getSeed(); }
+
+    /**
+     * Sets whether a continuous run iterates at full speed, with the chart showing its latest state as often as the UI
+     * can render it, rather than pausing at every update interval for the chart to catch up.
+     */
+    public void setFullSpeed(boolean fullSpeed) { this.fullSpeed = fullSpeed; }
+
+    public Clusterer(int k) { this(k, false); }
+
+    /**
+     * @param k         the number of clusters, which is at least 2
+     * @param unbounded whether any larger number of clusters is accepted, rather than up to 4
+     */
+    protected Clusterer(int k, boolean unbounded) {
         if (k < 2)
             k = 2;
-        else if (k > 4)
+        else if (k > 4 && !unbounded)
             k = 4;
         numberOfClusters = k;
     }
@@ -1,15 +1,19 @@
 package algorithms;
+import dataprocessors.LabelDictionary;
+import dataprocessors.MappedTSDReader;
+import dataprocessors.TSDBinaryCache;
 import dataprocessors.TSDProcessor;
 import javafx.geometry.Point2D;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.stream.Stream;
+import java.util.Set;
 
 /**
  * This class specifies how an algorithm will expect the dataset to be. It is
@@ -20,10 +24,17 @@ import java.util.stream.Stream;
  * objects representing the name-to-label map and the name-to-location (i.e.,
  * the x,y values) map. These two are the {@link DataSet#labels} and
  * {@link DataSet#locations} maps in this class.
+ * <p>
+ * The instances are stored by index, in the order they were added, as columns:
+ * an array of names, one of x and one of y coordinates, and one of label codes
+ * in a {@link LabelDictionary}, along with an open-addressing table from names
+ * to indices. Algorithms read and write the columns directly; the two maps are
+ * live views of the instances, which only create the labels and the
+ * {@link Point2D} locations as they are read, for display or save.
  *
  * @author Ritwik Banerjee
  */
-public class DataSet {
+public class DataSet implements PointSource {
 
     public static class InvalidDataNameException extends Exception {
 
@@ -40,19 +51,51 @@ public class DataSet {
         return name;
     }
 
-    private static Point2D locationOf(String locationString) {
-        String[] coordinateStrings = locationString.trim().split(",");
-        return new Point2D(Double.parseDouble(coordinateStrings[0]), Double.parseDouble(coordinateStrings[1]));
-    }
+    private String[]              names      = new String[16];
+    private double[]              xs         = new double[16];
+    private double[]              ys         = new double[16];
+    private int[]                 codes      = new int[16];
+    private int[]                 table      = new int[32]; // index + 1 of the instance hashed to each slot, 0 if none
+    private int                   size;
+    private boolean               shared; // whether the names and locations are shared with another data set
+    private final LabelDictionary dictionary;
 
-    private Map<String, String>  labels;
-    private Map<String, Point2D> locations;
+    private final Map<String, String>  labels    = new LabelView();
+    private final Map<String, Point2D> locations = new LocationView();
     TSDProcessor processor;
 
     /** Creates an empty dataset. */
-    public DataSet() {
-        labels = new LinkedHashMap<>();
-        locations = new LinkedHashMap<>();
+    public DataSet() { this.dictionary = new LabelDictionary(); }
+
+    private DataSet(LabelDictionary dictionary) { this.dictionary = dictionary; }
+
+    /**
+     * @return a copy of the labels of the instances as they are now, which shares the names and locations of this data
+     * set, as well as its label dictionary, so that it can be displayed while an algorithm goes on labeling this one
+     */
+    public DataSet labelSnapshot() { return sharing(dictionary); }
+
+    /**
+     * @return a data set for a run of its own, which shares the names and locations of this data set without copying
+     * them, and has its own copy of the labels and of the label dictionary. Concurrent runs on views of the same data
+     * thus only ever write to their own labels.
+     */
+    public DataSet runView() { return sharing(dictionary.copy()); }
+
+    /**
+     * @return a data set that shares the names and locations of this one, with a copy of its labels in the dictionary.
+     * Once shared, the names and locations can no longer be changed through either data set.
+     */
+    private DataSet sharing(LabelDictionary dictionary) {
+        DataSet view = new DataSet(dictionary);
+        view.names = names;
+        view.xs = xs;
+        view.ys = ys;
+        view.codes = Arrays.copyOf(codes, size);
+        view.table = table;
+        view.size = size;
+        view.shared = shared = true;
+        return view;
     }
 
     public Map<String, String> getLabels()     { return labels; }
@@ -60,38 +103,245 @@ public class DataSet {
     public Map<String, Point2D> getLocations() { return locations; }
 
     public void updateLabel(String instanceName, String newlabel) {
-        if (labels.get(instanceName) == null)
+        int index = indexOf(instanceName);
+        if (index < 0)
             throw new NoSuchElementException();
-        labels.put(instanceName, newlabel);
+        codes[index] = dictionary.encode(newlabel);
     }
 
-    private void addInstance(String tsdLine) throws InvalidDataNameException {
-        String[] arr = tsdLine.split("\t");
-        labels.put(nameFormatCheck(arr[0]), arr[1]);
-        locations.put(arr[0], locationOf(arr[2]));
+    /** @return the number of instances */
+    @Override
+    public int size()                             { return size; }
+
+    public String getName(int index)              { return names[index]; }
+
+    @Override
+    public double getX(int index)                 { return xs[index]; }
+
+    @Override
+    public double getY(int index)                 { return ys[index]; }
+
+    public Point2D getLocation(int index)         { return new Point2D(xs[index], ys[index]); }
+
+    /** @return the code of the instance's label in the {@link #getLabelDictionary() label dictionary} */
+    public int getLabelCode(int index)            { return codes[index]; }
+
+    public void setLabelCode(int index, int code) { codes[index] = code; }
+
+    public LabelDictionary getLabelDictionary()   { return dictionary; }
+
+    /** @return the index of the instance with the specified name, or -1 if there is none */
+    public int indexOf(Object name) {
+        if (!(name instanceof String))
+            return -1;
+        int mask = table.length - 1;
+        for (int slot = hash(name) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (names[table[slot] - 1].equals(name))
+                return table[slot] - 1;
+        }
+        return -1;
     }
 
-    public static DataSet fromTSDFile(Path tsdFilePath) throws IOException {
-        DataSet dataset = new DataSet();
-        Files.lines(tsdFilePath).forEach(line -> {
+    private static int hash(Object name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private void addInstance(String name, String label, double x, double y) throws InvalidDataNameException {
+        int index = indexOf(nameFormatCheck(name));
+        if (index < 0) {
+            if (size == names.length) {
+                int capacity = size * 2;
+                names = Arrays.copyOf(names, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                codes = Arrays.copyOf(codes, capacity);
+            }
+            index = size++;
+            names[index] = name;
+            if (size * 2 > table.length)
+                rehash(table.length * 2);
+            else
+                insert(index);
+        } // else a repeated name replaces the earlier instance, as in a map
+        xs[index] = x;
+        ys[index] = y;
+        codes[index] = dictionary.encode(label);
+    }
+
+    /** Removes every instance, as when a read is abandoned partway. */
+    private void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(table, 0);
+        size = 0;
+        dictionary.clear();
+    }
+
+    private void insert(int index) {
+        int mask = table.length - 1;
+        int slot = hash(names[index]) & mask;
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+        table[slot] = index + 1;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int i = 0; i < size; i++)
+            insert(i);
+    }
+
+    /** Creates a dataset holding the instances of the two maps, in the iteration order of the name-to-label map. */
+    public static DataSet fromMaps(Map<String, String> labels, Map<String, Point2D> locations) {
+        DataSet dataSet = new DataSet();
+        labels.forEach((name, label) -> {
+            Point2D location = locations.get(name);
             try {
-                dataset.addInstance(line);
+                dataSet.addInstance(name, label, location.getX(), location.getY());
             } catch (InvalidDataNameException e) {
                 e.printStackTrace();
             }
         });
-        return dataset;
+        return dataSet;
     }
 
-    public static DataSet fromTSDProcessor(String tsdString) {
-        DataSet dataSet = new DataSet();
-        Stream.of(tsdString.split("\n")).forEach(line -> {
+    /**
+     * Reads a data set from a <code>.tsd</code> file, through its {@link TSDBinaryCache} if it has an up-to-date one.
+     * A corrupt cache is ignored, and the file is parsed instead.
+     */
+    public static DataSet fromTSDFile(Path tsdFilePath) throws IOException {
+        DataSet dataset = new DataSet();
+        MappedTSDReader.RecordConsumer consumer = (name, label, x, y) -> {
             try {
-                dataSet.addInstance(line);
+                dataset.addInstance(name, label, x, y);
             } catch (InvalidDataNameException e) {
                 e.printStackTrace();
             }
-        });
+        };
+        try {
+            if (TSDBinaryCache.read(tsdFilePath, consumer) >= 0)
+                return dataset;
+        } catch (IOException | TSDProcessor.InvalidLineException e) { // a corrupt cache is parsed around
+            dataset.clear();
+        }
+        try {
+            MappedTSDReader.read(tsdFilePath, consumer);
+        } catch (TSDProcessor.InvalidLineException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return dataset;
+    }
+
+    /**
+     * Reads a data set from <code>.tsd</code> data, parsed as by {@link TSDProcessor#processString(String)}, which
+     * accepts and rejects the same data whatever its size.
+     *
+     * @throws IllegalArgumentException if a line does not follow the <code>.tsd</code> data format, or repeats the name
+     *                                  of an earlier line
+     */
+    public static DataSet fromTSDProcessor(String tsdString) {
+        DataSet dataSet = new DataSet();
+        try {
+            TSDProcessor.parse(tsdString, (name, label, x, y) -> {
+                if (dataSet.indexOf(name) >= 0)
+                    throw new TSDProcessor.DuplicateNameException(name);
+                dataSet.addInstance(name, label, x, y);
+            });
+        } catch (TSDProcessor.InvalidLineException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
         return dataSet;
     }
-}
\ No newline at end of file
+
+    /**
+     * A live view of the instances as a map from their names, in index order. The values of existing instances can be
+     * replaced through it, but instances cannot be added or removed.
+     */
+    private abstract class View<V> extends AbstractMap<String, V> {
+
+        abstract V value(int index);
+
+        abstract V replace(int index, V value);
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public boolean containsKey(Object name) { return indexOf(name) >= 0; }
+
+        @Override
+        public V get(Object name) {
+            int index = indexOf(name);
+            return index < 0 ? null : value(index);
+        }
+
+        @Override
+        public V put(String name, V value) {
+            int index = indexOf(name);
+            if (index < 0)
+                throw new UnsupportedOperationException(String.format("No instance named '%s'.", name));
+            return replace(index, value);
+        }
+
+        @Override
+        public Set<Entry<String, V>> entrySet() {
+            return new AbstractSet<Entry<String, V>>() {
+                @Override
+                public int size() { return size; }
+
+                @Override
+                public Iterator<Entry<String, V>> iterator() {
+                    return new Iterator<Entry<String, V>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() { return next < size; }
+
+                        @Override
+                        public Entry<String, V> next() {
+                            if (!hasNext())
+                                throw new NoSuchElementException();
+                            int index = next++;
+                            return new SimpleEntry<String, V>(names[index], value(index)) {
+                                @Override
+                                public V setValue(V value) {
+                                    super.setValue(value);
+                                    return replace(index, value);
+                                }
+                            };
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    private final class LabelView extends View<String> {
+
+        @Override
+        String value(int index) { return dictionary.decode(codes[index]); }
+
+        @Override
+        String replace(int index, String label) {
+            String previous = value(index);
+            codes[index] = dictionary.encode(label);
+            return previous;
+        }
+    }
+
+    private final class LocationView extends View<Point2D> {
+
+        @Override
+        Point2D value(int index) { return getLocation(index); }
+
+        @Override
+        Point2D replace(int index, Point2D location) {
+            if (shared)
+                throw new UnsupportedOperationException("The locations are shared with another data set.");
+            Point2D previous = value(index);
+            xs[index] = location.getX();
+            ys[index] = location.getY();
+            return previous;
+        }
+    }
+}
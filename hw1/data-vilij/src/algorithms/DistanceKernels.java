@@ -0,0 +1,81 @@
+package algorithms;
+
+/**
+ * The distance computations shared by the algorithms, on locations given as primitive x and y coordinates rather than
+ * as {@link javafx.geometry.Point2D} objects. Distances are compared squared, which orders them the same way without a
+ * square root.
+ * <p>
+ * Every kernel computes a distance with the same expression, in the same order of operations, so that two algorithms
+ * comparing the same pair of locations always get the same result, bit for bit. Among equally close centroids, the one
+ * of lowest index is the closest.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public final class DistanceKernels {
+
+    private DistanceKernels() { /* static methods only */ }
+
+    /** @return the squared distance between the two locations */
+    public static double distance2(double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * @param count the number of centroids, from index 0
+     * @return the index of the centroid closest to the location
+     */
+    public static int nearest(double x, double y, double[] centroidX, double[] centroidY, int count) {
+        double minDistance = Double.MAX_VALUE;
+        int minDistanceIndex = 0;
+        for (int i = 0; i < count; i++) {
+            double distance = distance2(centroidX[i], centroidY[i], x, y);
+            if (distance < minDistance) {
+                minDistance = distance;
+                minDistanceIndex = i;
+            }
+        }
+        return minDistanceIndex;
+    }
+
+    /**
+     * Finds the centroid closest to the location, along with the squared distances to it and to the second closest
+     * centroid.
+     *
+     * @param count     the number of centroids, from index 0
+     * @param distances receives the squared distance to the closest centroid at index 0, and to the second closest at
+     *                  index 1 ({@link Double#MAX_VALUE} if there is a single centroid)
+     * @return the index of the closest centroid
+     */
+    public static int nearestTwo(double x, double y, double[] centroidX, double[] centroidY, int count, double[] distances) {
+        double minDistance = Double.MAX_VALUE;
+        double secondDistance = Double.MAX_VALUE;
+        int minDistanceIndex = 0;
+        for (int i = 0; i < count; i++) {
+            double distance = distance2(centroidX[i], centroidY[i], x, y);
+            if (distance < minDistance) {
+                secondDistance = minDistance;
+                minDistance = distance;
+                minDistanceIndex = i;
+            } else if (distance < secondDistance)
+                secondDistance = distance;
+        }
+        distances[0] = minDistance;
+        distances[1] = secondDistance;
+        return minDistanceIndex;
+    }
+
+    /**
+     * @param from the first centroid (inclusive)
+     * @param to   the last centroid (exclusive)
+     * @return the squared distance from the location to the closest of the centroids, or {@link Double#MAX_VALUE} if
+     * there are none
+     */
+    public static double minDistance2(double x, double y, double[] centroidX, double[] centroidY, int from, int to) {
+        double minDistance = Double.MAX_VALUE;
+        for (int i = from; i < to; i++)
+            minDistance = Math.min(minDistance, distance2(centroidX[i], centroidY[i], x, y));
+        return minDistance;
+    }
+}
@@ -1,21 +1,13 @@
 package algorithms;
 
-import dataprocessors.AppData;
-import javafx.application.Platform;
-import javafx.geometry.Point2D;
-import javafx.scene.control.Button;
-import javafx.scene.control.RadioButton;
-import javafx.scene.layout.HBox;
-import settings.AppPropertyTypes;
-import ui.AppUI;
 import vilij.templates.ApplicationTemplate;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
 
 /**
  * @author Ritwik Banerjee
@@ -23,25 +15,52 @@ import java.util.stream.IntStream;
 public class KMeansClusterer extends Clusterer {
 
     private DataSet dataset;
-    private List<Point2D> centroids;
+    private double[] centroidX;
+    private double[] centroidY;
+    private int[] clusterCodes; // the label code of each cluster
+    private double[][] sumX;    // the per-cluster accumulators of each block in an iteration
+    private double[][] sumY;
+    private int[][] clusterSize;
+    private int[] changedLabels; // the number of instances of each block whose label changed in an iteration
+    private boolean parallel;
+    private boolean assigned;    // whether the labels are those of a previous iteration, rather than the data's
+    private CentroidTree tree;   // over the centroids of the current iteration, if there are enough of them
+
+    private boolean accelerated; // whether the distances are bounded, see assignBlockBounded(int)
+    private int[] assignment;    // the cluster of each instance
+    private double[] upper;      // an upper bound on the distance of each instance to its centroid
+    private double[] lower;      // a lower bound on the distance of each instance to every other centroid
+    private double[] shifts;     // how far each centroid moved in the last iteration
+    private double[] halfGaps;   // half the distance of each centroid to the closest other one
+    private int farthest;          // the centroid that moved the farthest in the last iteration
+    private double farthestShift;  // how far it moved
+    private double secondShift;    // how far the centroid that moved the second farthest moved
+
+    /** The number of instances labeled and summed up together; the results do not depend on how blocks are run. */
+    static final int BLOCK_SIZE = 1 << 14;
+    /** From this many instances on, the centroids are seeded by k-means|| rather than by k-means++. */
+    static final int SCALABLE_SEEDING_THRESHOLD = 1 << 18;
+    private static final int SEEDING_ROUNDS = 5;
+    /** The relative margin by which a bound must hold, so that rounding errors never skip a needed distance. */
+    private static final double BOUND_SLACK = 1e-9;
 
     private final int maxIterations;
     private final int updateInterval;
     private final AtomicBoolean tocontinue;
-    private AtomicBoolean finishedRunning;
-    private static int currentIteration = 0;
+    private final AlgorithmRunner runner;
     ApplicationTemplate applicationTemplate;
     ReentrantLock lock;
 
 
     public KMeansClusterer(DataSet dataset, ApplicationTemplate applicationTemplate, int maxIterations, int updateInterval, boolean tocontinue, int numberOfClusters) {
-        super(numberOfClusters);
+        super(Math.min(numberOfClusters, dataset.size()), true);
         this.dataset = dataset;
         this.maxIterations = maxIterations;
         this.updateInterval = updateInterval;
         this.tocontinue = new AtomicBoolean(tocontinue);
-        this.finishedRunning = new AtomicBoolean(true);
         this.applicationTemplate = applicationTemplate;
+        this.runner = new AlgorithmRunner(this, applicationTemplate);
+        this.parallel = dataset.size() >= 4 * BLOCK_SIZE && ForkJoinPool.getCommonPoolParallelism() > 1;
         lock = new ReentrantLock();
     }
 
@@ -61,177 +80,440 @@ public class KMeansClusterer extends Clusterer {
     }
 
     @Override
-    public void run() {
-        Platform.setImplicitExit(false);
-        Platform.runLater(() -> {
-            AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
-            try {
-                uiComponent.clearChart();
-                ((AppData) applicationTemplate.getDataComponent()).getProcessor().processString(uiComponent.getTextArea().getText());
-                ((AppData) applicationTemplate.getDataComponent()).getProcessor().toChartData(uiComponent.getChart());
-                uiComponent.getChart().getData().forEach(ser -> {
-                    ser.getNode().setStyle(applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL_STROKE.name()));
-                });
-            } catch (Exception e) { }
-        });
-        initializeCentroids();
-        if (tocontinue.get())
-            continuousrun();
+    public void run() { runner.run(fullSpeed); }
+
+    @Override
+    public void prepare() { initializeCentroids(); }
+
+    @Override
+    public DataSet labelSnapshot() { return dataset.labelSnapshot(); }
+
+    /**
+     * Seeds the centroids with k-means++: the first centroid is an instance picked at random, and every next one is an
+     * instance picked with a probability proportional to its squared distance to the closest centroid so far. The seeds
+     * are thus spread over the data, and the iterations start close to a good clustering.
+     * <p>
+     * On at least {@link #SCALABLE_SEEDING_THRESHOLD} instances, where the <code>k</code> passes of k-means++ over the
+     * data are expensive, the seeds are picked by {@link #seedScalable(SplittableRandom) k-means||} instead.
+     */
+    private void initializeCentroids() {
+        SplittableRandom random = randomStreams.split();
+        int blocks = (dataset.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        centroidX = new double[numberOfClusters];
+        centroidY = new double[numberOfClusters];
+        if (dataset.size() >= SCALABLE_SEEDING_THRESHOLD)
+            seedScalable(random);
         else
-            manualrun();
-    }
-
-    private void continuousrun() {
-        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
-        AppData dataComponent = ((AppData) applicationTemplate.getDataComponent());
-        finishedRunning.set(false);
-        Platform.runLater(() -> {
-            uiComponent.getRunButton().setDisable(true);
-            uiComponent.getToggle().setDisable(true);
-            uiComponent.getScrnshotButton().setDisable(true);
-            (((HBox) uiComponent.getVbox().getChildren().get(2)).getChildren().get(1)).setDisable(true);
-        });
-        for (int i = 1; i <= maxIterations; i += 1) {
-            if (i % updateInterval == 0) {
-                assignLabels();
-                recomputeCentroids();
-                System.out.printf("Iteration number %d%n", i);
-                Platform.runLater(() -> {
-                    uiComponent.clearChart();
-                    dataComponent.getProcessor().setDataLabels(dataset.getLabels());
-                    dataComponent.getProcessor().setDataPoints(dataset.getLocations());
-                    dataComponent.getProcessor().toChartData(uiComponent.getChart());
-                    uiComponent.getChart().getData().forEach(ser -> {
-                        ser.getNode().setStyle(applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL_STROKE.name()));
-                    });
-                });
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) { /* do nothing */ }
+            seedPlusPlus(dataset::getX, dataset::getY, null, dataset.size(), centroidX, centroidY, random);
+        clusterCodes = new int[numberOfClusters];
+        for (int i = 0; i < numberOfClusters; i++)
+            clusterCodes[i] = dataset.getLabelDictionary().encode(Integer.toString(i));
+        sumX = new double[blocks][numberOfClusters];
+        sumY = new double[blocks][numberOfClusters];
+        clusterSize = new int[blocks][numberOfClusters];
+        changedLabels = new int[blocks];
+        assigned = false;
+        if (accelerated) {
+            assignment = new int[dataset.size()];
+            upper = new double[dataset.size()];
+            lower = new double[dataset.size()];
+            shifts = new double[numberOfClusters];
+            halfGaps = new double[numberOfClusters];
+        }
+    }
+
+    /**
+     * Picks the centroids by weighted k-means++ among <code>count</code> points: each point is picked with a probability
+     * proportional to its weight times its squared distance to the closest centroid so far.
+     *
+     * @param xs        the x coordinate of each point
+     * @param ys        the y coordinate of each point
+     * @param weights   the weight of each point, or <code>null</code> if they all weigh 1
+     * @param centroidX receives the x coordinate of each centroid, one per cluster
+     * @param centroidY receives the y coordinate of each centroid
+     */
+    static void seedPlusPlus(IntToDoubleFunction xs, IntToDoubleFunction ys, double[] weights, int count,
+                             double[] centroidX, double[] centroidY, SplittableRandom random) {
+        double[] distances = new double[count]; // squared, to the closest centroid so far
+        Arrays.fill(distances, Double.MAX_VALUE);
+        int picked = random.nextInt(count);
+        for (int c = 0; c < centroidX.length; c++) {
+            centroidX[c] = xs.applyAsDouble(picked);
+            centroidY[c] = ys.applyAsDouble(picked);
+            if (c == centroidX.length - 1)
+                break;
+            double total = 0;
+            for (int j = 0; j < count; j++) {
+                distances[j] = Math.min(distances[j], DistanceKernels.distance2(xs.applyAsDouble(j), ys.applyAsDouble(j), centroidX[c], centroidY[c]));
+                total += weights == null ? distances[j] : weights[j] * distances[j];
             }
+            picked = total > 0 ? pick(distances, weights, total, random) : random.nextInt(count);
         }
-        Platform.runLater(() -> {
-            uiComponent.getScrnshotButton().setDisable(false);
-            uiComponent.getToggle().setDisable(false);
-            uiComponent.getAlgorithmSel().getSelectionModel().clearSelection();
-            uiComponent.getAlgorithmSel().setManaged(true);
-            uiComponent.getAlgorithmSel().setVisible(true);
-            ((RadioButton) ((HBox) uiComponent.getVbox().getChildren().get(2)).getChildren().get(0)).setSelected(false);
-            ((Button) ((HBox) uiComponent.getVbox().getChildren().get(2)).getChildren().get(1)).setDisable(false);
-            uiComponent.getVbox().setVisible(false);
-            uiComponent.getVbox().setManaged(false);
-            uiComponent.hideRunButton();
-        });
-        finishedRunning.set(true);
     }
 
-    private void initializeCentroids() {
-        Set<String> chosen = new HashSet<>();
-        List<String> instanceNames = new ArrayList<>(dataset.getLabels().keySet());
-        Random r = new Random();
-        while (chosen.size() < numberOfClusters) {
-            int i = r.nextInt(instanceNames.size());
-            while (chosen.contains(instanceNames.get(i)))
-                i = (++i % instanceNames.size());
-            chosen.add(instanceNames.get(i));
+    /** @return a point picked with a probability proportional to its weight times its distance */
+    private static int pick(double[] distances, double[] weights, double total, SplittableRandom random) {
+        double target = random.nextDouble() * total;
+        int last = 0;
+        for (int j = 0; j < distances.length; j++) {
+            double weighted = weights == null ? distances[j] : weights[j] * distances[j];
+            if (weighted > 0) {
+                last = j;
+                target -= weighted;
+                if (target < 0)
+                    return j;
+            }
         }
-        centroids = chosen.stream().map(name -> dataset.getLocations().get(name)).collect(Collectors.toList());
-    }
-
-    private void assignLabels() {
-        dataset.getLocations().forEach((instanceName, location) -> {
-            double minDistance = Double.MAX_VALUE;
-            int minDistanceIndex = -1;
-            for (int i = 0; i < centroids.size(); i++) {
-                double distance = computeDistance(centroids.get(i), location);
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    minDistanceIndex = i;
+        return last; // rounding left a sliver of the total over
+    }
+
+    /**
+     * Seeds the centroids with k-means||, which replaces the <code>k</code> sequential passes of k-means++ with a few
+     * passes that each sample many candidates at once. Starting from an instance picked at random, each of
+     * {@link #SEEDING_ROUNDS} rounds samples every instance independently, with a probability of <code>2k</code> times
+     * its share of the total squared distance to the closest candidate. Every candidate is then weighted by the number
+     * of instances closest to it, and the centroids are picked among the few candidates by weighted k-means++.
+     * <p>
+     * The passes run over the blocks of {@link #BLOCK_SIZE}, in parallel if the iterations do. In each round, each block
+     * samples with its own stream, split off in block order, and the results of the blocks are combined in block order,
+     * so the seeds do not depend on how the blocks were run.
+     */
+    private void seedScalable(SplittableRandom random) {
+        int      size       = dataset.size();
+        int      blocks     = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        double[] distances  = new double[size]; // squared, to the closest candidate so far
+        double[] blockCosts = new double[blocks];
+        int[][]  sampled    = new int[blocks][];
+        int[]    sampledCount = new int[blocks];
+        double   oversampling = 2.0 * numberOfClusters;
+
+        int first = random.nextInt(size);
+        double[] firstX = { dataset.getX(first) };
+        double[] firstY = { dataset.getY(first) };
+        Arrays.fill(distances, Double.MAX_VALUE);
+        forEachBlock(blocks, b -> blockCosts[b] = updateDistances(b, distances, firstX, firstY, 0, 1, null));
+        double[] candidateX = firstX;
+        double[] candidateY = firstY;
+
+        for (int round = 0; round < SEEDING_ROUNDS; round++) {
+            double cost = 0;
+            for (double blockCost : blockCosts)
+                cost += blockCost;
+            if (cost == 0) // every instance is a candidate already
+                break;
+            double factor = oversampling / cost;
+            SplittableRandom[] streams = new SplittableRandom[blocks];
+            for (int b = 0; b < blocks; b++)
+                streams[b] = random.split();
+            forEachBlock(blocks, b -> {
+                SplittableRandom blockRandom = streams[b];
+                int[]  picked      = new int[16];
+                int    count       = 0;
+                int    end         = Math.min(size, (b + 1) * BLOCK_SIZE);
+                for (int j = b * BLOCK_SIZE; j < end; j++) {
+                    if (blockRandom.nextDouble() < factor * distances[j]) {
+                        if (count == picked.length)
+                            picked = Arrays.copyOf(picked, count * 2);
+                        picked[count++] = j;
+                    }
+                }
+                sampled[b] = picked;
+                sampledCount[b] = count;
+            });
+            int from  = candidateX.length;
+            int added = 0;
+            for (int count : sampledCount)
+                added += count;
+            if (added == 0)
+                continue;
+            double[] xs = Arrays.copyOf(candidateX, from + added);
+            double[] ys = Arrays.copyOf(candidateY, from + added);
+            int c = from;
+            for (int b = 0; b < blocks; b++) {
+                for (int s = 0; s < sampledCount[b]; s++, c++) {
+                    xs[c] = dataset.getX(sampled[b][s]);
+                    ys[c] = dataset.getY(sampled[b][s]);
                 }
             }
-            dataset.getLabels().put(instanceName, Integer.toString(minDistanceIndex));
-        });
-    }
-
-    private void recomputeCentroids() {
-        IntStream.range(0, numberOfClusters).forEach(i -> {
-            AtomicInteger clusterSize = new AtomicInteger();
-            Point2D sum = dataset.getLabels()
-                    .entrySet()
-                    .stream()
-                    .filter(entry -> i == Integer.parseInt(entry.getValue()))
-                    .map(entry -> dataset.getLocations().get(entry.getKey()))
-                    .reduce(new Point2D(0, 0), (p, q) -> {
-                        clusterSize.incrementAndGet();
-                        return new Point2D(p.getX() + q.getX(), p.getY() + q.getY());
-                    });
-            Point2D newCentroid = new Point2D(sum.getX() / clusterSize.get(), sum.getY() / clusterSize.get());
-            if (!newCentroid.equals(centroids.get(i))) {
-                centroids.set(i, newCentroid);
-            }
-        });
-    }
-
-    private void manualrun() {
-        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
-        AppData dataComponent = ((AppData) applicationTemplate.getDataComponent());
-        if (currentIteration < maxIterations && updateInterval <= maxIterations) {
-            try {
-                assignLabels();
-                recomputeCentroids();
-                finishedRunning.set(false);
-                currentIteration += updateInterval;
-                Platform.runLater(() -> {
-                    uiComponent.getScrnshotButton().setDisable(true);
-                    uiComponent.getRunButton().setDisable(true);
-                    uiComponent.getToggle().setDisable(true);
-                    ((Button) ((HBox) uiComponent.getVbox().getChildren().get(2)).getChildren().get(1)).setDisable(true);
-                });
-                System.out.printf("Iteration number %d%n", currentIteration);
-                Platform.runLater(() -> {
-                    uiComponent.clearChart();
-                    dataComponent.getProcessor().setDataLabels(dataset.getLabels());
-                    dataComponent.getProcessor().setDataPoints(dataset.getLocations());
-                    dataComponent.getProcessor().toChartData(uiComponent.getChart());
-                    uiComponent.getChart().getData().forEach(ser -> {
-                        ser.getNode().setStyle(applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL_STROKE.name()));
-                    });
-                });
-                Thread.sleep(500);
-                if (currentIteration + updateInterval > maxIterations) { // on last iteration
-                    Platform.runLater(() -> {
-                        uiComponent.getScrnshotButton().setDisable(false);
-                        uiComponent.getToggle().setDisable(false);
-                        uiComponent.getAlgorithmSel().getSelectionModel().clearSelection();
-                        uiComponent.getAlgorithmSel().setManaged(true);
-                        uiComponent.getAlgorithmSel().setVisible(true);
-                        ((RadioButton) ((HBox) uiComponent.getVbox().getChildren().get(2)).getChildren().get(0)).setSelected(false);
-                        uiComponent.getVbox().setVisible(false);
-                        uiComponent.getVbox().setManaged(false);
-                        ((Button) ((HBox) uiComponent.getVbox().getChildren().get(2)).getChildren().get(1)).setDisable(false);
-                        uiComponent.hideRunButton();
-                    });
-                    currentIteration = 0;
-                    finishedRunning.set(true);
-                    return;
-                } else {
-                    Platform.runLater(() -> {
-                        uiComponent.getScrnshotButton().setDisable(false);
-                        uiComponent.getRunButton().setDisable(false);
-                    });
+            CentroidTree addedTree = xs.length - from >= CentroidTree.MIN_CENTROIDS ? new CentroidTree(xs, ys, from, xs.length) : null;
+            forEachBlock(blocks, b -> blockCosts[b] = updateDistances(b, distances, xs, ys, from, xs.length, addedTree));
+            candidateX = xs;
+            candidateY = ys;
+        }
+
+        double[] xs = candidateX;
+        double[] ys = candidateY;
+        int[][] closest = new int[blocks][];
+        CentroidTree candidates = xs.length >= CentroidTree.MIN_CENTROIDS ? new CentroidTree(xs, ys) : null;
+        forEachBlock(blocks, b -> closest[b] = countClosest(b, xs, ys, candidates));
+        double[] weights = new double[xs.length];
+        for (int b = 0; b < blocks; b++)
+            for (int c = 0; c < xs.length; c++)
+                weights[c] += closest[b][c];
+        seedPlusPlus(c -> xs[c], c -> ys[c], weights, xs.length, centroidX, centroidY, random);
+    }
+
+    /**
+     * Lowers the squared distance of each instance of a block to the closest candidate, given the candidates from
+     * <code>from</code> to <code>to</code>, and possibly a tree over them.
+     *
+     * @return the sum of the distances over the block
+     */
+    private double updateDistances(int block, double[] distances, double[] xs, double[] ys, int from, int to, CentroidTree tree) {
+        CentroidTree.Query query = tree == null ? null : tree.query(false);
+        double cost = 0;
+        int    end  = Math.min(dataset.size(), (block + 1) * BLOCK_SIZE);
+        for (int j = block * BLOCK_SIZE; j < end; j++) {
+            double x = dataset.getX(j);
+            double y = dataset.getY(j);
+            double distance = distances[j];
+            if (query != null) {
+                query.find(x, y);
+                distance = Math.min(distance, query.distance());
+            } else
+                distance = Math.min(distance, DistanceKernels.minDistance2(x, y, xs, ys, from, to));
+            distances[j] = distance;
+            cost += distance;
+        }
+        return cost;
+    }
+
+    /** @return the number of instances of a block that are closest to each candidate */
+    private int[] countClosest(int block, double[] xs, double[] ys, CentroidTree tree) {
+        CentroidTree.Query query  = tree == null ? null : tree.query(false);
+        int[]              counts = new int[xs.length];
+        int                end    = Math.min(dataset.size(), (block + 1) * BLOCK_SIZE);
+        for (int j = block * BLOCK_SIZE; j < end; j++)
+            counts[closest(dataset.getX(j), dataset.getY(j), xs, ys, query)]++;
+        return counts;
+    }
+
+    /**
+     * Labels the instances of a block as {@link #assignBlock(int)} does, but skips the distances that cannot change an
+     * instance's label (Hamerly's algorithm). Each instance keeps an upper bound on the distance to its centroid and a
+     * lower bound on the distance to every other one, which are loosened by how far the centroids moved. While the
+     * upper bound is below both the lower bound and half the distance from its centroid to the closest other one, the
+     * centroid is still the closest, and no distance is computed at all. Otherwise, the upper bound is tightened to the
+     * actual distance, and only if that is not enough are all the distances computed, exactly as by
+     * {@link #assignBlock(int)}.
+     * <p>
+     * A bound must hold by a small relative margin to skip the distances, so an instance as close to two centroids is
+     * always given the same label as by {@link #assignBlock(int)}. The sums are added up in the same order, so the
+     * centroids, and the labels of the next iterations, are exactly the same as well.
+     */
+    private void assignBlockBounded(int block) {
+        double[] blockSumX = sumX[block];
+        double[] blockSumY = sumY[block];
+        int[] blockSize = clusterSize[block];
+        Arrays.fill(blockSumX, 0);
+        Arrays.fill(blockSumY, 0);
+        Arrays.fill(blockSize, 0);
+        CentroidTree.Query query = tree == null ? null : tree.query(true);
+        double[] distances = new double[2];
+        int changed = 0;
+        int end = Math.min(dataset.size(), (block + 1) * BLOCK_SIZE);
+        for (int j = block * BLOCK_SIZE; j < end; j++) {
+            double x = dataset.getX(j);
+            double y = dataset.getY(j);
+            int cluster = assignment[j];
+            boolean scan = !assigned;
+            if (!scan) {
+                double u = upper[j] + shifts[cluster];
+                double l = lower[j] - (cluster == farthest ? secondShift : farthestShift);
+                double bound = Math.max(halfGaps[cluster], l) * (1 - BOUND_SLACK);
+                if (u >= bound) {
+                    u = Math.sqrt(DistanceKernels.distance2(centroidX[cluster], centroidY[cluster], x, y));
+                    scan = u >= bound;
                 }
-            } catch (InterruptedException e) {
+                upper[j] = u;
+                lower[j] = l;
             }
+            if (scan && query != null) {
+                query.find(x, y);
+                cluster = assignment[j] = query.nearest();
+                upper[j] = Math.sqrt(query.distance());
+                lower[j] = Math.sqrt(query.secondDistance());
+            } else if (scan) {
+                cluster = assignment[j] = DistanceKernels.nearestTwo(x, y, centroidX, centroidY, numberOfClusters, distances);
+                upper[j] = Math.sqrt(distances[0]);
+                lower[j] = Math.sqrt(distances[1]);
+            }
+            if (dataset.getLabelCode(j) != clusterCodes[cluster]) {
+                dataset.setLabelCode(j, clusterCodes[cluster]);
+                changed++;
+            }
+            blockSumX[cluster] += x;
+            blockSumY[cluster] += y;
+            blockSize[cluster]++;
+        }
+        changedLabels[block] = changed;
+    }
+
+    /** Finds the two centroids that moved the farthest in the last iteration, which loosen the lower bounds. */
+    private void updateShifts() {
+        farthest = 0;
+        farthestShift = 0;
+        secondShift = 0;
+        for (int i = 0; i < numberOfClusters; i++) {
+            if (shifts[i] > farthestShift) {
+                secondShift = farthestShift;
+                farthestShift = shifts[i];
+                farthest = i;
+            } else if (shifts[i] > secondShift)
+                secondShift = shifts[i];
+        }
+    }
+
+    private void updateHalfGaps() {
+        Arrays.fill(halfGaps, Double.MAX_VALUE);
+        for (int i = 0; i < numberOfClusters; i++) {
+            for (int c = i + 1; c < numberOfClusters; c++) {
+                double halfGap = Math.sqrt(DistanceKernels.distance2(centroidX[i], centroidY[i], centroidX[c], centroidY[c])) / 2;
+                halfGaps[i] = Math.min(halfGaps[i], halfGap);
+                halfGaps[c] = Math.min(halfGaps[c], halfGap);
+            }
+        }
+    }
+
+    /** Runs a task on every block, in parallel if the iterations are run in parallel. */
+    private void forEachBlock(int blocks, IntConsumer task) {
+        if (parallel && blocks > 1)
+            ForkJoinPool.commonPool().invoke(new BlockTask(0, blocks, task));
+        else
+            for (int b = 0; b < blocks; b++)
+                task.accept(b);
+    }
+
+    /**
+     * Runs one iteration: each instance is labeled with its closest centroid, and the centroids are then moved to the
+     * means of their clusters; the centroid of an empty cluster stays where it is.
+     * <p>
+     * The clustering has converged once an iteration changes no label, or moves no centroid farther than the
+     * tolerance.
+     * <p>
+     * With many clusters, the closest centroids are searched in a {@link CentroidTree} built over the centroids at the
+     * start of the iteration.
+     * <p>
+     * The instances are split into blocks of {@link #BLOCK_SIZE}, which are labeled and summed up independently, and
+     * possibly in parallel. The partial sums of the blocks are then added up in block order, so the centroids come out
+     * exactly the same whether or not the blocks ran in parallel.
+     * <p>
+     * In the {@link #setAccelerated(boolean) accelerated} mode, the instances are labeled by
+     * {@link #assignBlockBounded(int)}, which gives the same labels and sums.
+     */
+    @Override
+    public boolean iterate() {
+        int blocks = sumX.length;
+        tree = numberOfClusters >= CentroidTree.MIN_CENTROIDS ? new CentroidTree(centroidX, centroidY) : null;
+        if (accelerated) {
+            if (assigned)
+                updateHalfGaps();
+            forEachBlock(blocks, this::assignBlockBounded);
+        } else
+            forEachBlock(blocks, this::assignBlock);
+        double maxShift = 0; // squared
+        for (int i = 0; i < numberOfClusters; i++) {
+            double x = 0;
+            double y = 0;
+            int size = 0;
+            for (int b = 0; b < blocks; b++) {
+                x += sumX[b][i];
+                y += sumY[b][i];
+                size += clusterSize[b][i];
+            }
+            double shift = 0; // squared
+            if (size > 0) {
+                x /= size;
+                y /= size;
+                shift = DistanceKernels.distance2(x, y, centroidX[i], centroidY[i]);
+                maxShift = Math.max(maxShift, shift);
+                centroidX[i] = x;
+                centroidY[i] = y;
+            }
+            if (accelerated)
+                shifts[i] = Math.sqrt(shift);
+        }
+        if (accelerated)
+            updateShifts();
+        int changed = 0;
+        for (int b = 0; b < blocks; b++)
+            changed += changedLabels[b];
+        boolean converged = assigned && (changed == 0 || Math.sqrt(maxShift) <= tolerance);
+        assigned = true;
+        return converged;
+    }
+
+    /**
+     * Labels the instances of a block with their closest centroids, adding each one to its cluster's sums at the same
+     * time, in a single pass.
+     */
+    private void assignBlock(int block) {
+        double[] blockSumX = sumX[block];
+        double[] blockSumY = sumY[block];
+        int[] blockSize = clusterSize[block];
+        Arrays.fill(blockSumX, 0);
+        Arrays.fill(blockSumY, 0);
+        Arrays.fill(blockSize, 0);
+        CentroidTree.Query query = tree == null ? null : tree.query(false);
+        int changed = 0;
+        int end = Math.min(dataset.size(), (block + 1) * BLOCK_SIZE);
+        for (int j = block * BLOCK_SIZE; j < end; j++) {
+            double x = dataset.getX(j);
+            double y = dataset.getY(j);
+            int minDistanceIndex = closest(x, y, centroidX, centroidY, query);
+            if (dataset.getLabelCode(j) != clusterCodes[minDistanceIndex]) {
+                dataset.setLabelCode(j, clusterCodes[minDistanceIndex]);
+                changed++;
+            }
+            blockSumX[minDistanceIndex] += x;
+            blockSumY[minDistanceIndex] += y;
+            blockSize[minDistanceIndex]++;
         }
+        changedLabels[block] = changed;
     }
 
-    private static double computeDistance(Point2D p, Point2D q) {
-        return Math.sqrt(Math.pow(p.getX() - q.getX(), 2) + Math.pow(p.getY() - q.getY(), 2));
+    /**
+     * @return the index of the centroid closest to the location, searched with a query of the tree over the centroids
+     * if there is one, or else by measuring the distance to every centroid; equally close centroids go to the lowest
+     * index
+     */
+    static int closest(double x, double y, double[] centroidX, double[] centroidY, CentroidTree.Query query) {
+        if (query != null) {
+            query.find(x, y);
+            return query.nearest();
+        }
+        return DistanceKernels.nearest(x, y, centroidX, centroidY, centroidX.length);
     }
 
+    /**
+     * @return the inertia of the clustering as it is now: the sum of the squared distances of the instances to their
+     * closest centroids, which the iterations minimize, and by which clusterings of the same data compare
+     */
+    public double getInertia() {
+        CentroidTree.Query query = numberOfClusters >= CentroidTree.MIN_CENTROIDS ? new CentroidTree(centroidX, centroidY).query(false) : null;
+        double inertia = 0;
+        for (int i = 0; i < dataset.size(); i++) {
+            double x = dataset.getX(i);
+            double y = dataset.getY(i);
+            int cluster = closest(x, y, centroidX, centroidY, query);
+            inertia += DistanceKernels.distance2(x, y, centroidX[cluster], centroidY[cluster]);
+        }
+        return inertia;
+    }
+
+    /** Sets whether the blocks of an iteration are labeled in parallel, which by default they are on large data. */
+    public void setParallel(boolean parallel) { this.parallel = parallel; }
+
+    /**
+     * Sets whether the iterations skip the distances that bounds show cannot change a label, which speeds up the later
+     * iterations without changing the clustering. It pays off as the number of clusters grows, costs two doubles and an
+     * int per instance, and is off by default.
+     */
+    public void setAccelerated(boolean accelerated) { this.accelerated = accelerated; }
+
     @Override
     public boolean finishedRunning() {
-        return finishedRunning.get();
+        return runner.finishedRunning();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,333 @@
+package algorithms;
+
+import dataprocessors.LabelDictionary;
+import javafx.scene.chart.XYChart;
+import settings.AppPropertyTypes;
+import ui.AppUI;
+import vilij.templates.ApplicationTemplate;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Classifies the instances of two labels with a straight line, trained by logistic regression with mini-batch
+ * stochastic gradient descent. Each iteration takes the next batch of a shuffled order of the labeled instances, and
+ * moves the line's weights against the gradient of the batch's log loss, with a slight L2 penalty that keeps the
+ * weights finite when the labels are separable. Instances whose label is <code>null</code> are not trained on, and a
+ * data set without exactly two other labels is rejected. The run ends early once a step moves the weights less than
+ * {@link #TOLERANCE}.
+ * <p>
+ * The coordinates are standardized before training, so that one learning rate suits data of any scale, and the line is
+ * mapped back to the original coordinates for the {@link #output}. The training data is copied into primitive arrays,
+ * and an iteration allocates nothing. A large batch's gradient is summed up in chunks, possibly in parallel, and the
+ * chunks are added up in order, so the result does not depend on how the chunks were run.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public class LinearClassifier extends Classifier {
+
+    /** The number of instances per gradient step unless {@link #setBatchSize(int) set} otherwise. */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /** The largest change of a standardized weight by a step at which the line has converged. */
+    public static final double TOLERANCE = 1e-4;
+
+    private static final double LEARNING_RATE  = 0.5;
+    private static final double REGULARIZATION = 1e-4;
+    private static final int    CHUNK_SIZE     = 1 << 12;
+    private static final int    OUTPUT_SCALE   = 1_000_000; // the largest coefficient of the published line
+
+    private DataSet dataset;
+    ApplicationTemplate applicationTemplate;
+    private final int maxIterations;
+    private final int updateInterval;
+    private final AtomicReference<XYChart.Series<Number, Number>> prevSeriesRef = new AtomicReference<>(); // the line shown last
+    private final AlgorithmRunner runner;
+    private final AtomicBoolean tocontinue;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean parallel;
+    private SplittableRandom random;
+    private double[] xs;       // the standardized coordinates of the labeled instances
+    private double[] ys;
+    private double[] targets;  // 0 for the first label, 1 for the other
+    private int[] order;       // the shuffled order in which the instances are trained on
+    private int position;      // the start of the next batch in the order
+    private int batchFrom;
+    private int batchTo;
+    private double[] partials; // the gradient of each chunk of the batch
+    private double meanX;
+    private double meanY;
+    private double scaleX;
+    private double scaleY;
+    private double weightX;    // the weights of the line, in standardized coordinates
+    private double weightY;
+    private double bias;
+    private double[] line = new double[3]; // a, b, c of the line a x + b y = c, in the original coordinates
+    private double minX;       // the bounds of all the instances, across which the line is drawn
+    private double maxX;
+    private double minY;
+    private double maxY;
+
+    /** @throws IllegalArgumentException if the data set does not have exactly two labels, besides <code>null</code> */
+    public LinearClassifier(DataSet dataset,
+                            ApplicationTemplate applicationTemplate,
+                            int maxIterations,
+                            int updateInterval,
+                            boolean tocontinue) {
+        int labels = countLabels(dataset, applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL.name()));
+        if (labels != 2)
+            throw new IllegalArgumentException(String.format(applicationTemplate.manager.getPropertyValue(AppPropertyTypes.LINEAR_CLASSIFIER_LABELS.name()), labels));
+        this.dataset = dataset;
+        this.applicationTemplate = applicationTemplate;
+        this.maxIterations = maxIterations;
+        this.updateInterval = updateInterval;
+        this.tocontinue = new AtomicBoolean(tocontinue);
+        this.runner = new AlgorithmRunner(this, applicationTemplate, this::lineFrame);
+    }
+
+    /** @return the number of distinct labels of the instances, besides the specified label of those not trained on */
+    private static int countLabels(DataSet dataset, String nullLabel) {
+        LabelDictionary dictionary = dataset.getLabelDictionary();
+        boolean[] seen = new boolean[dictionary.size()];
+        int count = 0;
+        for (int i = 0; i < dataset.size(); i++) {
+            int code = dataset.getLabelCode(i);
+            if (!seen[code] && !dictionary.decode(code).equalsIgnoreCase(nullLabel))
+                count++;
+            seen[code] = true;
+        }
+        return count;
+    }
+
+    @Override
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    @Override
+    public int getUpdateInterval() {
+        return updateInterval;
+    }
+
+    @Override
+    public boolean tocontinue() {
+        return tocontinue.get();
+    }
+
+    /** Sets the number of instances per gradient step. */
+    public void setBatchSize(int batchSize) { this.batchSize = Math.max(1, batchSize); }
+
+    @Override
+    public void run() { runner.run(fullSpeed); }
+
+    /**
+     * Copies the coordinates of the labeled instances into primitive arrays, standardized to a mean of 0 and a standard
+     * deviation of 1, along with their targets.
+     *
+     * @param nullLabel the label of the instances that are not trained on
+     */
+    private void prepare(String nullLabel) {
+        LabelDictionary dictionary = dataset.getLabelDictionary();
+        boolean[] unlabeled = new boolean[dictionary.size()];
+        for (int code = 0; code < unlabeled.length; code++)
+            unlabeled[code] = dictionary.decode(code).equalsIgnoreCase(nullLabel);
+        int count = 0;
+        for (int i = 0; i < dataset.size(); i++)
+            if (!unlabeled[dataset.getLabelCode(i)])
+                count++;
+        xs = new double[count];
+        ys = new double[count];
+        targets = new double[count];
+        order = new int[count];
+        int first = -1;
+        int c = 0;
+        for (int i = 0; i < dataset.size(); i++) {
+            int code = dataset.getLabelCode(i);
+            if (unlabeled[code])
+                continue;
+            if (first < 0)
+                first = code;
+            xs[c] = dataset.getX(i);
+            ys[c] = dataset.getY(i);
+            targets[c] = code == first ? 0 : 1;
+            order[c] = c;
+            c++;
+        }
+        minX = minY = Double.MAX_VALUE;
+        maxX = maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < dataset.size(); i++) {
+            minX = Math.min(minX, dataset.getX(i));
+            maxX = Math.max(maxX, dataset.getX(i));
+            minY = Math.min(minY, dataset.getY(i));
+            maxY = Math.max(maxY, dataset.getY(i));
+        }
+        meanX = mean(xs);
+        meanY = mean(ys);
+        scaleX = standardize(xs, meanX);
+        scaleY = standardize(ys, meanY);
+        weightX = weightY = bias = 0;
+        random = randomStreams.split();
+        position = count; // shuffles before the first batch
+        partials = new double[3 * ((Math.min(batchSize, Math.max(count, 1)) + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+        parallel = partials.length > 3 * 4 && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    @Override
+    public void prepare() { prepare(applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL.name())); }
+
+    /**
+     * Takes one gradient step, and publishes the line as the {@link #output}.
+     *
+     * @return whether the step moved no weight by more than {@link #TOLERANCE}
+     */
+    @Override
+    public boolean iterate() {
+        double shift = step();
+        updateOutput();
+        return shift <= TOLERANCE;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values)
+            sum += value;
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+
+    /** @return the standard deviation the values were divided by, after subtracting their mean */
+    private static double standardize(double[] values, double mean) {
+        double sum = 0;
+        for (double value : values)
+            sum += (value - mean) * (value - mean);
+        double deviation = values.length == 0 ? 0 : Math.sqrt(sum / values.length);
+        if (deviation == 0)
+            deviation = 1;
+        for (int i = 0; i < values.length; i++)
+            values[i] = (values[i] - mean) / deviation;
+        return deviation;
+    }
+
+    /**
+     * Takes one gradient step on the next batch, reshuffling the instances once they have all been trained on.
+     *
+     * @return the largest change of a weight by the step
+     */
+    private double step() {
+        int size = xs.length;
+        if (size == 0)
+            return 0;
+        int batch = Math.min(batchSize, size);
+        if (position + batch > size) {
+            shuffle();
+            position = 0;
+        }
+        batchFrom = position;
+        batchTo = position + batch;
+        position = batchTo;
+        int chunks = (batch + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (parallel && chunks > 1)
+            ForkJoinPool.commonPool().invoke(new BlockTask(0, chunks, this::gradientChunk));
+        else
+            for (int c = 0; c < chunks; c++)
+                gradientChunk(c);
+        double gradientX = 0;
+        double gradientY = 0;
+        double gradientBias = 0;
+        for (int c = 0; c < chunks; c++) {
+            gradientX += partials[3 * c];
+            gradientY += partials[3 * c + 1];
+            gradientBias += partials[3 * c + 2];
+        }
+        double stepX = LEARNING_RATE * (gradientX / batch + REGULARIZATION * weightX);
+        double stepY = LEARNING_RATE * (gradientY / batch + REGULARIZATION * weightY);
+        double stepBias = LEARNING_RATE * gradientBias / batch;
+        weightX -= stepX;
+        weightY -= stepY;
+        bias -= stepBias;
+        return Math.max(Math.abs(stepX), Math.max(Math.abs(stepY), Math.abs(stepBias)));
+    }
+
+    /** Sums up the gradient of the log loss over one chunk of the batch. */
+    private void gradientChunk(int chunk) {
+        int from = batchFrom + chunk * CHUNK_SIZE;
+        int to = Math.min(batchTo, from + CHUNK_SIZE);
+        double gradientX = 0;
+        double gradientY = 0;
+        double gradientBias = 0;
+        for (int s = from; s < to; s++) {
+            int i = order[s];
+            double error = 1 / (1 + Math.exp(-(weightX * xs[i] + weightY * ys[i] + bias))) - targets[i];
+            gradientX += error * xs[i];
+            gradientY += error * ys[i];
+            gradientBias += error;
+        }
+        partials[3 * chunk] = gradientX;
+        partials[3 * chunk + 1] = gradientY;
+        partials[3 * chunk + 2] = gradientBias;
+    }
+
+    private void shuffle() {
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swapped = order[i];
+            order[i] = order[j];
+            order[j] = swapped;
+        }
+    }
+
+    /**
+     * Maps the line back to the original coordinates, as <code>a x + b y = c</code>, and publishes it as the
+     * {@link #output} triple, scaled so that its largest coefficient is {@link #OUTPUT_SCALE} and rounded.
+     */
+    private void updateOutput() {
+        line[0] = weightX / scaleX;
+        line[1] = weightY / scaleY;
+        line[2] = line[0] * meanX + line[1] * meanY - bias;
+        double largest = Math.max(Math.abs(line[0]), Math.max(Math.abs(line[1]), Math.abs(line[2])));
+        double scale = largest == 0 ? 0 : OUTPUT_SCALE / largest;
+        output = Arrays.asList((int) Math.round(line[0] * scale), (int) Math.round(line[1] * scale), (int) Math.round(line[2] * scale));
+    }
+
+    /**
+     * @return a rendering of the line as it is now across the data, to be run on the UI thread in place of the line
+     * shown before; it renders nothing until the line is defined
+     */
+    private Runnable lineFrame() {
+        boolean vertical = Math.abs(line[1]) <= 1e-9 * Math.abs(line[0]);
+        double min = vertical ? minY : minX;
+        double max = vertical ? maxY : maxX;
+        if (dataset.size() == 0 || (line[0] == 0 && line[1] == 0))
+            return () -> { };
+        XYChart.Series<Number, Number> series = new XYChart.Series<>();
+        series.setName(applicationTemplate.manager.getPropertyValue(AppPropertyTypes.LINEAR_CLASSIFIER_LINE.name()));
+        if (vertical) {
+            series.getData().add(new XYChart.Data<>(line[2] / line[0], min));
+            series.getData().add(new XYChart.Data<>(line[2] / line[0], max));
+        } else {
+            series.getData().add(new XYChart.Data<>(min, (line[2] - line[0] * min) / line[1]));
+            series.getData().add(new XYChart.Data<>(max, (line[2] - line[0] * max) / line[1]));
+        }
+        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
+        String chartSeriesLine = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.CHART_SERIES_LINE.name());
+        String strokeWidth = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.AVG_SERIES_STROKE_WIDTH.name());
+        String chartLineSymbol = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.CHART_LINE_SYMBOL.name());
+        String bgColor = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.AVG_SERIES_BG_COLOR.name());
+        return () -> {
+            if (uiComponent.getChart().getData().contains(prevSeriesRef.get()))
+                uiComponent.getChart().getData().remove(prevSeriesRef.get());
+            uiComponent.getChart().getData().add(series);
+            prevSeriesRef.set(series);
+            series.getNode().lookup(chartSeriesLine).setStyle(strokeWidth);
+            series.getData().forEach(data -> data.getNode().lookup(chartLineSymbol).setStyle(bgColor));
+        };
+    }
+
+    @Override
+    public boolean finishedRunning() {
+        return runner.finishedRunning();
+    }
+}
@@ -0,0 +1,198 @@
+package algorithms;
+
+import javafx.geometry.Point2D;
+import vilij.templates.ApplicationTemplate;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+
+/**
+ * Clusters the data with mini-batch k-means: instead of labeling every instance in every iteration, an iteration
+ * samples a small batch of locations and moves the centroids toward them. Each centroid learns at its own rate, one
+ * over the number of locations it has been moved toward so far, so it settles as it accumulates evidence. An iteration
+ * thus costs the size of the batch, whatever the size of the data.
+ * <p>
+ * The batches are drawn from a {@link PointSource}: a data set, or the memory-mapped cache of a file, which lets the
+ * clusterer sample data that it does not hold in memory. Only an evenly spread sample of at most {@link #DISPLAY_SIZE}
+ * instances is ever labeled, for the chart, so neither an iteration nor a frame depends on the size of the data.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public class MiniBatchKMeansClusterer extends Clusterer {
+
+    /** The number of locations sampled per iteration unless {@link #setBatchSize(int) set} otherwise. */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    /** The largest number of instances labeled for the chart. */
+    static final int DISPLAY_SIZE = 2000;
+
+    private final PointSource source;
+    private final DataSet display; // the sample of the instances labeled for the chart
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private double[] centroidX;
+    private double[] centroidY;
+    private long[] counts;       // the number of locations each centroid has been moved toward
+    private int[] clusterCodes;  // the label code of each cluster
+    private double[] batchX;
+    private double[] batchY;
+    private int[] batchClusters; // the closest centroid of each location of the batch
+    private SplittableRandom random;
+
+    private final int maxIterations;
+    private final int updateInterval;
+    private final AtomicBoolean tocontinue;
+    private final AlgorithmRunner runner;
+    ApplicationTemplate applicationTemplate;
+
+    public MiniBatchKMeansClusterer(DataSet dataset, ApplicationTemplate applicationTemplate, int maxIterations, int updateInterval, boolean tocontinue, int numberOfClusters) {
+        this(dataset, displaySample(dataset, dataset::getName), applicationTemplate, maxIterations, updateInterval, tocontinue, numberOfClusters);
+    }
+
+    /**
+     * Creates a clusterer of locations that are not held in a data set, such as those of the memory-mapped cache of a
+     * file. The instances shown on the chart are named after their index in the source.
+     */
+    public MiniBatchKMeansClusterer(PointSource source, ApplicationTemplate applicationTemplate, int maxIterations, int updateInterval, boolean tocontinue, int numberOfClusters) {
+        this(source, displaySample(source, index -> "@" + (index + 1)), applicationTemplate, maxIterations, updateInterval, tocontinue, numberOfClusters);
+    }
+
+    private MiniBatchKMeansClusterer(PointSource source, DataSet display, ApplicationTemplate applicationTemplate, int maxIterations, int updateInterval, boolean tocontinue, int numberOfClusters) {
+        super(Math.min(numberOfClusters, source.size()), true);
+        this.source = source;
+        this.display = display;
+        this.maxIterations = maxIterations;
+        this.updateInterval = updateInterval;
+        this.tocontinue = new AtomicBoolean(tocontinue);
+        this.applicationTemplate = applicationTemplate;
+        this.runner = new AlgorithmRunner(this, applicationTemplate);
+    }
+
+    @Override
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    @Override
+    public int getUpdateInterval() {
+        return updateInterval;
+    }
+
+    @Override
+    public boolean tocontinue() {
+        return tocontinue.get();
+    }
+
+    /** Sets the number of locations sampled per iteration. */
+    public void setBatchSize(int batchSize) { this.batchSize = Math.max(1, batchSize); }
+
+    /**
+     * @param names the name of the instance at each index of the source
+     * @return the instances shown on the chart: all of them, or an evenly spread sample of {@link #DISPLAY_SIZE}
+     */
+    private static DataSet displaySample(PointSource source, IntFunction<String> names) {
+        int size = Math.min(source.size(), DISPLAY_SIZE);
+        Map<String, String> labels = new LinkedHashMap<>();
+        Map<String, Point2D> locations = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            int index = (int) ((long) i * source.size() / size);
+            String name = names.apply(index);
+            labels.put(name, "0"); // until the sample is labeled by the centroids
+            locations.put(name, new Point2D(source.getX(index), source.getY(index)));
+        }
+        return DataSet.fromMaps(labels, locations);
+    }
+
+    /** Runs on the chart; the data is only shown as the sample of the first frame, as it may not be held in memory. */
+    @Override
+    public void run() { runner.run(fullSpeed, false); }
+
+    @Override
+    public void prepare() { initializeCentroids(); }
+
+    /** Seeds the centroids by k-means++ over a first sample of the source, and resets their learning rates. */
+    private void initializeCentroids() {
+        random = randomStreams.split();
+        centroidX = new double[numberOfClusters];
+        centroidY = new double[numberOfClusters];
+        counts = new long[numberOfClusters];
+        batchX = new double[batchSize];
+        batchY = new double[batchSize];
+        batchClusters = new int[batchSize];
+        int sampleSize = Math.max(batchSize, 10 * numberOfClusters);
+        double[] sampleX = new double[sampleSize];
+        double[] sampleY = new double[sampleSize];
+        sample(sampleX, sampleY);
+        KMeansClusterer.seedPlusPlus(i -> sampleX[i], i -> sampleY[i], null, sampleSize, centroidX, centroidY, random);
+        clusterCodes = new int[numberOfClusters];
+        for (int i = 0; i < numberOfClusters; i++)
+            clusterCodes[i] = display.getLabelDictionary().encode(Integer.toString(i));
+    }
+
+    /** Fills the arrays with locations drawn uniformly at random, with replacement, from the source. */
+    private void sample(double[] xs, double[] ys) {
+        int size = source.size();
+        for (int s = 0; s < xs.length; s++) {
+            int index = random.nextInt(size);
+            xs[s] = source.getX(index);
+            ys[s] = source.getY(index);
+        }
+    }
+
+    /**
+     * Runs one iteration: samples a batch, finds the closest centroid of each of its locations against the centroids
+     * as they were before the batch, and then moves each centroid a step toward each of its locations in turn. The
+     * steps shrink as one over the centroid's count of locations, so a centroid ends up at the running mean of all the
+     * locations it was moved toward.
+     * <p>
+     * Since a sampled batch always moves the centroids a little, the clustering only converges with a positive
+     * tolerance, once a batch moves no centroid farther than that.
+     */
+    @Override
+    public boolean iterate() {
+        sample(batchX, batchY);
+        CentroidTree.Query query = newQuery();
+        for (int s = 0; s < batchSize; s++)
+            batchClusters[s] = KMeansClusterer.closest(batchX[s], batchY[s], centroidX, centroidY, query);
+        double[] previousX = centroidX.clone();
+        double[] previousY = centroidY.clone();
+        for (int s = 0; s < batchSize; s++) {
+            int c = batchClusters[s];
+            double rate = 1.0 / ++counts[c];
+            centroidX[c] += rate * (batchX[s] - centroidX[c]);
+            centroidY[c] += rate * (batchY[s] - centroidY[c]);
+        }
+        double maxShift = 0; // squared
+        for (int i = 0; i < numberOfClusters; i++) {
+            maxShift = Math.max(maxShift, DistanceKernels.distance2(centroidX[i], centroidY[i], previousX[i], previousY[i]));
+        }
+        return tolerance > 0 && Math.sqrt(maxShift) <= tolerance;
+    }
+
+    /** @return a search of a tree over the current centroids, or <code>null</code> if they are too few for a tree */
+    private CentroidTree.Query newQuery() {
+        if (numberOfClusters < CentroidTree.MIN_CENTROIDS)
+            return null;
+        return new CentroidTree(centroidX, centroidY).query(false);
+    }
+
+    /**
+     * @return the sample of the instances shown on the chart, labeled with their closest centroids as they are now; the
+     * labels are those of a copy, so the clusterer itself is left as it is
+     */
+    @Override
+    public DataSet labelSnapshot() {
+        DataSet snapshot = display.labelSnapshot();
+        CentroidTree.Query query = newQuery();
+        for (int j = 0; j < snapshot.size(); j++)
+            snapshot.setLabelCode(j, clusterCodes[KMeansClusterer.closest(snapshot.getX(j), snapshot.getY(j), centroidX, centroidY, query)]);
+        return snapshot;
+    }
+
+    @Override
+    public boolean finishedRunning() {
+        return runner.finishedRunning();
+    }
+}
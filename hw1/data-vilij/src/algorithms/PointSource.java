@@ -0,0 +1,18 @@
+package algorithms;
+
+/**
+ * A read-only, indexed sequence of the locations of data instances, which an algorithm can sample without holding the
+ * instances themselves. A {@link DataSet} is one; a {@link dataprocessors.TSDBinaryCache} can also serve the locations
+ * of a file straight from its memory-mapped cache.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public interface PointSource {
+
+    /** @return the number of locations */
+    int size();
+
+    double getX(int index);
+
+    double getY(int index);
+}
@@ -1,27 +1,23 @@
 package algorithms;
 
-import dataprocessors.AppData;
-import javafx.application.Platform;
-import javafx.scene.control.Button;
-import javafx.scene.control.RadioButton;
-import javafx.scene.layout.HBox;
-import settings.AppPropertyTypes;
-import ui.AppUI;
+import dataprocessors.LabelDictionary;
 import vilij.templates.ApplicationTemplate;
 
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
 
 public class RandomClusterer extends Clusterer {
 
+    private static final int BLOCK_SIZE = 1 << 14;
+
     private DataSet dataset;
     private final int maxIterations;
     private final int updateInterval;
     private final AtomicBoolean tocontinue;
-    private AtomicBoolean finishedRunning;
-    private static int currentIteration = 0;
+    private final AlgorithmRunner runner;
     ApplicationTemplate applicationTemplate;
-    ReentrantLock lock;
 
     public RandomClusterer(DataSet dataset, ApplicationTemplate applicationTemplate, int maxIterations, int updateInterval, boolean tocontinue, int numberOfClusters) {
         super(numberOfClusters);
@@ -29,17 +25,31 @@ public class RandomClusterer extends Clusterer {
         this.maxIterations = maxIterations;
         this.updateInterval = updateInterval;
         this.tocontinue = new AtomicBoolean(tocontinue);
-        this.finishedRunning = new AtomicBoolean(true);
         this.applicationTemplate = applicationTemplate;
-        this.lock = new ReentrantLock();
-    }
-
-    public String generatedLabel() {
-        return String.valueOf((int) ((Math.random() * numberOfClusters)));
+        this.runner = new AlgorithmRunner(this, applicationTemplate);
     }
 
+    /**
+     * Labels every instance with a cluster picked at random. The instances are labeled in blocks, in parallel on large
+     * data, and each block draws from its own stream, split off in block order, so the labels only depend on the seed.
+     */
     public DataSet newLabels() {
-        dataset.getLocations().forEach((instanceName, location) -> { dataset.getLabels().put(instanceName, generatedLabel()); });
+        LabelDictionary dictionary = dataset.getLabelDictionary();
+        int[] codes = new int[numberOfClusters];
+        for (int c = 0; c < numberOfClusters; c++)
+            codes[c] = dictionary.encode(Integer.toString(c));
+        int blocks = (dataset.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        SplittableRandom[] streams = randomStreams.split(blocks);
+        IntConsumer labelBlock = b -> {
+            int end = Math.min(dataset.size(), (b + 1) * BLOCK_SIZE);
+            for (int i = b * BLOCK_SIZE; i < end; i++)
+                dataset.setLabelCode(i, codes[streams[b].nextInt(numberOfClusters)]);
+        };
+        if (blocks > 1 && ForkJoinPool.getCommonPoolParallelism() > 1)
+            ForkJoinPool.commonPool().invoke(new BlockTask(0, blocks, labelBlock));
+        else
+            for (int b = 0; b < blocks; b++)
+                labelBlock.accept(b);
         return dataset;
     }
 
@@ -53,133 +63,27 @@ public class RandomClusterer extends Clusterer {
     public boolean tocontinue() { return tocontinue.get(); }
 
     @Override
-    public boolean finishedRunning() { return finishedRunning.get(); }
+    public boolean finishedRunning() { return runner.finishedRunning(); }
 
     @Override
-    public void run() {
-        Platform.setImplicitExit(false);
-        Platform.runLater(() -> {
-            AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
-            try {
-                uiComponent.clearChart();
-                ((AppData) applicationTemplate.getDataComponent()).getProcessor().processString(uiComponent.getTextArea().getText());
-                ((AppData) applicationTemplate.getDataComponent()).getProcessor().toChartData(uiComponent.getChart());
-                uiComponent.getChart().getData().forEach(ser -> {
-                    ser.getNode().setStyle(applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL_STROKE.name()));
-                });
-            } catch (Exception e) { }
-        });
-        if (tocontinue.get()) {
-            continuousrun();
-        } else {
-            manualrun();
-        }
-    }
+    public void run() { runner.run(fullSpeed); }
 
-    private void manualrun() {
-        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
-        AppData dataComponent = ((AppData) applicationTemplate.getDataComponent());
-        if (currentIteration < maxIterations && updateInterval <= maxIterations) {
-            try {
-                finishedRunning.set(false);
-                currentIteration += updateInterval;
-                Platform.runLater(() -> {
-                    uiComponent.getScrnshotButton().setDisable(true);
-                    uiComponent.getRunButton().setDisable(true);
-                    uiComponent.getToggle().setDisable(true);
-                    ((Button) ((HBox) uiComponent.getVbox().getChildren().get(1)).getChildren().get(1)).setDisable(true);
-                });
-                System.out.printf("Iteration number %d%n", currentIteration);
-                DataSet updatedData = newLabels();
-                Platform.runLater(() -> {
-                    lock.lock();
-                    try {
-                        uiComponent.clearChart();
-                        dataComponent.getProcessor().setDataLabels(updatedData.getLabels());
-                        dataComponent.getProcessor().setDataPoints(updatedData.getLocations());
-                        dataComponent.getProcessor().toChartData(uiComponent.getChart());
-                        uiComponent.getChart().getData().forEach(ser -> {
-                            ser.getNode().setStyle(applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL_STROKE.name()));
-                        });
-                    } finally {
-                        lock.unlock();
-                    }
-                });
-                Thread.sleep(500);
-                if (currentIteration + updateInterval > maxIterations) { // on last iteration
-                    Platform.runLater(() -> {
-                        uiComponent.getScrnshotButton().setDisable(false);
-                        uiComponent.getToggle().setDisable(false);
-                        uiComponent.getAlgorithmSel().getSelectionModel().clearSelection();
-                        uiComponent.getAlgorithmSel().setManaged(true);
-                        uiComponent.getAlgorithmSel().setVisible(true);
-                        ((RadioButton) ((HBox) uiComponent.getVbox().getChildren().get(1)).getChildren().get(0)).setSelected(false);
-                        uiComponent.getVbox().setVisible(false);
-                        uiComponent.getVbox().setManaged(false);
-                        ((Button) ((HBox) uiComponent.getVbox().getChildren().get(1)).getChildren().get(1)).setDisable(false);
-                        uiComponent.hideRunButton();
-                    });
-                    currentIteration = 0;
-                    finishedRunning.set(true);
-                    return;
-                } else {
-                    Platform.runLater(() -> {
-                        uiComponent.getScrnshotButton().setDisable(false);
-                        uiComponent.getRunButton().setDisable(false);
-                    });
-                }
-            } catch (InterruptedException e) { }
-        }
-    }
+    /** A random clusterer needs nothing prepared: it draws new labels at every iteration. */
+    @Override
+    public void prepare() { }
 
-    private void continuousrun() {
-        try {
-            AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
-            AppData dataComponent = ((AppData) applicationTemplate.getDataComponent());
-            finishedRunning.set(false);
-            for (int i = 1; i <= maxIterations && tocontinue(); i += 1) {
-                Platform.runLater(() -> {
-                    uiComponent.getRunButton().setDisable(true);
-                    uiComponent.getToggle().setDisable(true);
-                    uiComponent.getScrnshotButton().setDisable(true);
-                    ((Button) ((HBox) uiComponent.getVbox().getChildren().get(0)).getChildren().get(1)).setDisable(true);
-                });
-                // everything below is just for internal viewing of how the output is changing
-                // in the final project, such changes will be dynamically visible in the UI
-                if (i % updateInterval == 0) {
-                    System.out.printf("Iteration number %d%n", i);
-                    DataSet updatedDataSet = newLabels();
-                    Platform.runLater(() -> {
-                        lock.lock();
-                        try {
-                            uiComponent.clearChart();
-                            dataComponent.getProcessor().setDataLabels(updatedDataSet.getLabels());
-                            dataComponent.getProcessor().setDataPoints(updatedDataSet.getLocations());
-                            dataComponent.getProcessor().toChartData(uiComponent.getChart());
-                            uiComponent.getChart().getData().forEach(ser -> {
-                                ser.getNode().setStyle(applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL_STROKE.name()));
-                            });
-                        } finally {
-                            lock.unlock();
-                        }
-                    });
-                    Thread.sleep(500);
-                }
-            }
-            Platform.runLater(() -> {
-                uiComponent.getScrnshotButton().setDisable(false);
-                uiComponent.getToggle().setDisable(false);
-                uiComponent.getAlgorithmSel().getSelectionModel().clearSelection();
-                uiComponent.getAlgorithmSel().setManaged(true);
-                uiComponent.getAlgorithmSel().setVisible(true);
-                ((RadioButton) ((HBox) uiComponent.getVbox().getChildren().get(0)).getChildren().get(0)).setSelected(false);
-                ((Button) ((HBox) uiComponent.getVbox().getChildren().get(0)).getChildren().get(1)).setDisable(false);
-                uiComponent.getVbox().setVisible(false);
-                uiComponent.getVbox().setManaged(false);
-                uiComponent.hideRunButton();
-            });
-            finishedRunning.set(true);
-        }
-        catch (InterruptedException e) { }
+    /**
+     * Labels the instances at random, so that the labels drawn only depend on the seed and the number of iterations,
+     * however often they are shown.
+     *
+     * @return <code>false</code>, as a random clusterer never converges
+     */
+    @Override
+    public boolean iterate() {
+        newLabels();
+        return false;
     }
+
+    @Override
+    public DataSet labelSnapshot() { return dataset.labelSnapshot(); }
 }
@@ -0,0 +1,43 @@
+package algorithms;
+
+import java.util.SplittableRandom;
+
+/**
+ * The source of randomness of a run. Every component of an algorithm that draws random numbers, and every worker that
+ * labels a block of instances, takes its own {@link SplittableRandom} stream split off from a single root generator,
+ * so no two threads ever share a generator, and the streams are statistically independent of one another.
+ * <p>
+ * The root is seeded with the {@link #getSeed() seed} of the run, so a run that splits its streams in the same order
+ * draws exactly the same numbers again. Streams for parallel workers are split off in a fixed order, typically one per
+ * block, before the workers start, so the numbers do not depend on how the workers are scheduled.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public final class RandomStreams {
+
+    private final long             seed;
+    private final SplittableRandom root;
+
+    /** Starts the streams from a seed picked at random. */
+    public RandomStreams() { this(new SplittableRandom().nextLong()); }
+
+    /** Starts the streams from the seed, so that they draw the same numbers as any other streams of the same seed. */
+    public RandomStreams(long seed) {
+        this.seed = seed;
+        this.root = new SplittableRandom(seed);
+    }
+
+    /** @return the seed the streams started from, with which a run can be repeated */
+    public long getSeed() { return seed; }
+
+    /** @return the next stream, to be used by a single thread */
+    public synchronized SplittableRandom split() { return root.split(); }
+
+    /** @return the next <code>count</code> streams, in order, one for each of as many workers */
+    public synchronized SplittableRandom[] split(int count) {
+        SplittableRandom[] streams = new SplittableRandom[count];
+        for (int i = 0; i < count; i++)
+            streams[i] = root.split();
+        return streams;
+    }
+}
@@ -0,0 +1,97 @@
+package algorithms;
+
+/**
+ * The state of a step-mode run of an algorithm, which lives as long as the algorithm's instance, so that a run goes on
+ * from where it paused, with its data and its state, rather than starting over for every step.
+ * <p>
+ * A run starts out {@link State#READY ready}. Each {@link #step(int) step} lets it run some more iterations, after
+ * which it pauses by itself; it can also be {@link #pause() paused} between any two iterations and
+ * {@link #resume() resumed}, until it is {@link #finish() finished}. The algorithm's thread waits while the run is
+ * paused, and calls {@link #awaitIteration()} before and {@link #completeIteration()} after each iteration.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public final class StepControl {
+
+    public enum State { READY, RUNNING, PAUSED, FINISHED }
+
+    private State state = State.READY;
+    private int   iteration; // the number of iterations run so far
+    private int   target;    // the number of iterations after which the run pauses
+    private boolean pausing; // whether the run pauses after the iteration in progress
+
+    public synchronized State getState() { return state; }
+
+    /** @return the number of iterations run so far */
+    public synchronized int getIteration() { return iteration; }
+
+    /** @return whether the run is waiting for a step, or to be resumed */
+    public synchronized boolean isPaused() { return state == State.READY || state == State.PAUSED; }
+
+    /** Lets the run go on for <code>n</code> more iterations than it has been asked for, and then pause. */
+    public synchronized void step(int n) {
+        if (state == State.FINISHED)
+            return;
+        target = Math.max(target, iteration) + n;
+        state = State.RUNNING;
+        pausing = false;
+        notifyAll();
+    }
+
+    /**
+     * Pauses the run once the iteration in progress is done, if it is running. The algorithm's thread learns of it from
+     * {@link #completeIteration()}, so that it can show the state it paused in.
+     */
+    public synchronized void pause() {
+        if (state == State.RUNNING)
+            pausing = true;
+    }
+
+    /** @return whether the run has paused before the end of the steps it was asked for, and can be resumed */
+    public synchronized boolean canResume() { return state == State.PAUSED && iteration < target; }
+
+    /** Resumes a paused run, if it has iterations left of the steps it was asked for. */
+    public synchronized void resume() {
+        pausing = false;
+        if (state == State.PAUSED && iteration < target) {
+            state = State.RUNNING;
+            notifyAll();
+        }
+    }
+
+    /** Ends the run, waking up the algorithm's thread if it is waiting. */
+    public synchronized void finish() {
+        state = State.FINISHED;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the run may go on with an iteration.
+     *
+     * @return <code>true</code> to run the next iteration, or <code>false</code> once the run is finished
+     * @throws InterruptedException if the run was cancelled, whether it was waiting or running
+     */
+    synchronized boolean awaitIteration() throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        while (state == State.READY || state == State.PAUSED)
+            wait();
+        return state == State.RUNNING;
+    }
+
+    /**
+     * Counts an iteration as run.
+     *
+     * @return whether the run has paused after it, as it was the last iteration asked for, or as the run was asked to
+     * {@link #pause()}
+     */
+    synchronized boolean completeIteration() {
+        iteration++;
+        if (state == State.RUNNING && (iteration >= target || pausing)) {
+            state = State.PAUSED;
+            pausing = false;
+            return true;
+        }
+        return false;
+    }
+}
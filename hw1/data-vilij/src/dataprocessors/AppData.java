@@ -1,7 +1,15 @@
 package dataprocessors;
 
 import algorithms.Algorithm;
+import algorithms.AlgorithmExecutor;
+import algorithms.Classifier;
+import algorithms.Clusterer;
 import algorithms.DataSet;
+import algorithms.KMeansClusterer;
+import algorithms.LinearClassifier;
+import algorithms.MiniBatchKMeansClusterer;
+import algorithms.PointSource;
+import algorithms.StepControl;
 import javafx.geometry.Point2D;
 import javafx.scene.chart.LineChart;
 import javafx.scene.control.RadioButton;
@@ -19,12 +27,15 @@ import vilij.templates.ApplicationTemplate;
 import java.io.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Stream;
 
 import static settings.AppPropertyTypes.*;
 import static vilij.settings.PropertyTypes.*;
@@ -37,9 +48,15 @@ import static vilij.settings.PropertyTypes.*;
  */
 public class AppData implements DataComponent {
 
+    /** Files larger than {@link AppPropertyTypes#MAX_DISPLAY_BYTES} only have this many lines shown in the text area. */
+    public static final int PREVIEW_LINES = 10;
+
     private TSDProcessor        processor;
     private ApplicationTemplate applicationTemplate;
+    private Path                previewedFile; // the loaded file, if the text area only shows a preview of it
+    private TSDTextModel        textModel = new TSDTextModel();
     Algorithm algorithm;
+    private Future<?>           run;           // the run of the algorithm, done once it has ended
 
 
     public AppData(ApplicationTemplate applicationTemplate) {
@@ -47,6 +64,13 @@ public class AppData implements DataComponent {
         this.applicationTemplate = applicationTemplate;
     }
 
+    /**
+     * Loads the data file in a single pass. A file of at most {@link AppPropertyTypes#MAX_DISPLAY_BYTES} bytes is read
+     * into one buffer, which is parsed as bytes and also decoded once for the text area. A larger file is parsed
+     * through a memory map, or read from its binary cache if it was opened before, and the text area only shows its
+     * first {@link #PREVIEW_LINES} lines; the file then stays the source of the data for later runs and saves (see
+     * {@link #reloadProcessor()}).
+     */
     @Override
     public void loadData(Path dataFilePath) {
         applicationTemplate.getUIComponent().clear();
@@ -55,16 +79,30 @@ public class AppData implements DataComponent {
             Text statsText = ((AppUI) applicationTemplate.getUIComponent()).getStatsText();
             TextArea textArea = ((AppUI) applicationTemplate.getUIComponent()).getTextArea();
             textArea.clear();
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(dataFilePath.toFile()));
-            String lineRead;
-            String lines = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.EMPTY_STRING.name());
-            while ((lineRead = bufferedReader.readLine()) != null) {
-                lines += lineRead + System.lineSeparator();
+            int maxDisplayBytes = applicationTemplate.manager.getPropertyValueAsInt(MAX_DISPLAY_BYTES.name());
+            byte[] bytes = readForDisplay(dataFilePath, maxDisplayBytes);
+            if (bytes != null) {
+                previewedFile = null;
+                textArea.setText(new String(bytes, StandardCharsets.UTF_8));
+            } else {
+                previewedFile = dataFilePath;
+                textArea.setText(preview(dataFilePath));
             }
-            textArea.setText(lines);
             textArea.setEditable(false);
             textArea.getStylesheets().add((getClass().getResource(applicationTemplate.manager.getPropertyValue(TEXTAREA_CSS.name())).toExternalForm()));
-            loadData(lines);
+            try {
+                if (bytes != null) {
+                    processor.processBytes(ByteBuffer.wrap(bytes));
+                } else {
+                    processor.processCachedFile(dataFilePath, AlgorithmExecutor.getExecutor()::submitIO);
+                    String loadWarningTitle = applicationTemplate.manager.getPropertyValue(LOAD_WARNING_TITLE.name());
+                    String overTenLines = applicationTemplate.manager.getPropertyValue(OVER_TEN_LINES.name());
+                    ErrorDialog.getDialog().show(loadWarningTitle, String.format(overTenLines, processor.getLineNumber().get()-1));
+                }
+                processor.hadAnError.set(false);
+            } catch (TSDProcessor.InvalidLineException e) {
+                showLoadError(e, bytes != null ? textArea.getText() : null);
+            }
             String statsWithPath = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.STATS_WITH_PATH.name());
             statsText.setText(String.format(statsWithPath, processor.getLineNumber().get()-1, getNumberOfLabels(), dataFilePath.toString(), getLabelNames()));
 
@@ -73,44 +111,169 @@ public class AppData implements DataComponent {
         catch (IOException e) { System.err.println(e.getMessage()); }
     }
 
+    /**
+     * @return the whole contents of the data file, decompressed if it is compressed, or <code>null</code> if they are
+     * longer than the specified number of bytes
+     */
+    private static byte[] readForDisplay(Path dataFilePath, int maxDisplayBytes) throws IOException {
+        if (!MappedTSDReader.isCompressed(dataFilePath))
+            return Files.size(dataFilePath) <= maxDisplayBytes ? Files.readAllBytes(dataFilePath) : null;
+        try (InputStream in = MappedTSDReader.newInputStream(dataFilePath)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                if (out.size() > maxDisplayBytes)
+                    return null;
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static String preview(Path dataFilePath) throws IOException {
+        StringBuilder preview = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(MappedTSDReader.newInputStream(dataFilePath), StandardCharsets.UTF_8))) {
+            String line;
+            for (int i = 0; i < PREVIEW_LINES && (line = reader.readLine()) != null; i++)
+                preview.append(line).append(System.lineSeparator());
+        }
+        return preview.toString();
+    }
+
+    /**
+     * Re-populates the processor from wherever the data is held in full: the loaded file if the text area only shows a
+     * preview of it, and the text area otherwise.
+     *
+     * @throws Exception if the data does not follow the <code>.tsd</code> data format
+     */
+    public void reloadProcessor() throws Exception {
+        clear();
+        if (previewedFile != null)
+            processor.processCachedFile(previewedFile, AlgorithmExecutor.getExecutor()::submitIO);
+        else
+            processText(((AppUI) applicationTemplate.getUIComponent()).getTextArea().getText());
+    }
+
+    /**
+     * Processes text data, taking it from the model of the text area when the text is the text area's and is valid. Any
+     * other text, or text with an error to report, is parsed in full.
+     */
+    private void processText(String dataString) throws TSDProcessor.InvalidLineException {
+        boolean textArea = dataString.equals(((AppUI) applicationTemplate.getUIComponent()).getTextArea().getText());
+        if (textArea)
+            textModel.sync(dataString);
+        if (textArea && textModel.isValid())
+            processor.processModel(textModel);
+        else
+            processor.processString(dataString);
+    }
+
+    /** @return the model of the text area, which the text area updates as it is edited */
+    public TSDTextModel getTextModel() { return textModel; }
+
+    /**
+     * Creates a new data set, for an algorithm to run on, from wherever the data is held in full. The runs of the
+     * multi-run workspace share one, each through a {@link DataSet#runView() view} of its own.
+     */
+    public DataSet newDataSet() throws IOException {
+        if (previewedFile != null)
+            return DataSet.fromTSDFile(previewedFile);
+        textModel.sync(((AppUI) applicationTemplate.getUIComponent()).getTextArea().getText());
+        if (textModel.isValid())
+            return DataSet.fromMaps(textModel.getLabels(), textModel.getPoints());
+        try {
+            return DataSet.fromTSDProcessor(((AppUI) applicationTemplate.getUIComponent()).getTextArea().getText());
+        } catch (IllegalArgumentException e) { // as a file that does not follow the format is reported
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the memory-mapped locations of the previewed file, or <code>null</code> if the text area holds the data,
+     * or if they cannot be mapped
+     */
+    private PointSource cachedPoints() {
+        if (previewedFile == null)
+            return null;
+        try {
+            return TSDBinaryCache.openPoints(previewedFile);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /** Forgets the file loaded last, once the text area becomes the source of the data again. */
+    public void resetSource() { previewedFile = null; }
+
+    /** @return whether the text area only shows a preview of the loaded file, which then holds the data in full */
+    public boolean isPreviewingFile() { return previewedFile != null; }
+
     public void loadData(String dataString) {
         try {
             if (dataString.isEmpty()) return;
-            processor.processString(dataString);
-            int indexErr = checkForDuplicates(dataString);
-
-            if (indexErr != -1) {
-                List<String> lines = Arrays.asList(dataString.split(System.lineSeparator()));
-                String errLoadTitle = applicationTemplate.manager.getPropertyValue(LOAD_ERROR_TITLE.name());
-                String errDupMsg = applicationTemplate.manager.getPropertyValue(DUPLICATE_ERR_MSG.name());
-                String errDupCont = (indexErr+1) + System.lineSeparator() + lines.get(indexErr);
-                ErrorDialog errorDialog = ErrorDialog.getDialog();
-                errorDialog.show(errLoadTitle, errDupMsg + errDupCont);
-                ((AppUI) applicationTemplate.getUIComponent()).getSaveButton().setDisable(true);
-                processor.hadAnError.set(true);
-                clear();
-            } else {
-                processor.hadAnError.set(false);
-            }
+            processText(dataString);
+            processor.hadAnError.set(false);
+        } catch (TSDProcessor.InvalidLineException e) {
+            showLoadError(e, dataString);
+        }
+    }
 
-        } catch (Exception e) {
+    /**
+     * Shows the error found while processing the data: a duplicate name along with its line, or a format error.
+     *
+     * @param e          the error
+     * @param dataString the data that was processed, or <code>null</code> if it is not held as a single string
+     */
+    private void showLoadError(TSDProcessor.InvalidLineException e, String dataString) {
+        ErrorDialog errorDialog = ErrorDialog.getDialog();
+        if (e.isDuplicate()) {
+            String errLoadTitle = applicationTemplate.manager.getPropertyValue(LOAD_ERROR_TITLE.name());
+            String errDupMsg = applicationTemplate.manager.getPropertyValue(DUPLICATE_ERR_MSG.name());
+            String errDupCont = e.getLineNumber() + System.lineSeparator() + duplicateLine(e, dataString);
+            errorDialog.show(errLoadTitle, errDupMsg + errDupCont);
+        } else {
             // TODO: check if substring always works
             String errLoadTitle = applicationTemplate.manager.getPropertyValue(PropertyTypes.LOAD_ERROR_TITLE.name());
             String errLoadMsg =
                     applicationTemplate.manager.getPropertyValue(INCORRECT_FORMAT.name()) +
                     e.getMessage().substring(e.getMessage().indexOf("\n")+1);
-            ErrorDialog errorDialog = ErrorDialog.getDialog();
             errorDialog.show(errLoadTitle, errLoadMsg);
-            ((AppUI) applicationTemplate.getUIComponent()).getSaveButton().setDisable(true);
-            processor.hadAnError.set(true);
         }
+        ((AppUI) applicationTemplate.getUIComponent()).getSaveButton().setDisable(true);
+        processor.hadAnError.set(true);
+    }
+
+    /**
+     * @return the line holding the duplicate name reported by the error, or just the name if the data is not held as a
+     * single string
+     */
+    public static String duplicateLine(TSDProcessor.InvalidLineException e, String dataString) {
+        if (dataString == null)
+            return ((TSDProcessor.DuplicateNameException) e.getCause()).getName();
+        int start = 0;
+        for (int line = 1; line < e.getLineNumber(); line++)
+            start = dataString.indexOf('\n', start) + 1;
+        int end = dataString.indexOf('\n', start);
+        return dataString.substring(start, end < 0 ? dataString.length() : end);
     }
 
     @Override
     public void saveData(Path dataFilePath) {
         // NOTE: completing this method was not a part of HW 1. You may have implemented file saving from the
         // confirmation dialog elsewhere in a different way.
-        if (dataFilePath != null) {
+        if (dataFilePath != null && previewedFile != null) {
+            try {
+                if (!Files.exists(dataFilePath) || !Files.isSameFile(previewedFile, dataFilePath)) { // the data is read-only
+                    try (InputStream in = MappedTSDReader.newInputStream(previewedFile)) { // saved decompressed
+                        Files.copy(in, dataFilePath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        } else if (dataFilePath != null) {
             try (PrintWriter writer = new PrintWriter(Files.newOutputStream(dataFilePath))) {
                 writer.write(((AppUI) applicationTemplate.getUIComponent()).getTextArea().getText());
             } catch (IOException e) {
@@ -139,22 +302,19 @@ public class AppData implements DataComponent {
 
     }
 
-    public int checkForDuplicates(String tsdString)
-    {
-        List<String> names = new ArrayList<>();
-        Stream.of(tsdString.split("\n")).map(line -> Arrays.asList(line.split("\t"))).forEach(list -> {
-            String name = list.get(0);
-            names.add(name);
-        });
-        List<String> namesFromMap = new ArrayList<>(getDataPoints().keySet());
-        if (names.size() != namesFromMap.size()) {
-            for (int i = 0; i < namesFromMap.size(); i++) {
-                if (!namesFromMap.get(i).equals(names.get(i)))
-                    return i;
-            }
-            return namesFromMap.size();
-        }
-        return -1;
+    /**
+     * Shows the data on the chart with the labels of the data set in place of its own, such as the clusters of a run, or
+     * of a model picked in a sweep. Like the labels of a run, they are shown until the data is reloaded.
+     */
+    public void displayLabels(DataSet labels) {
+        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
+        uiComponent.clearChart();
+        uiComponent.getChart().setAnimated(false);
+        processor.setDataLabels(labels.getLabels());
+        processor.setDataPoints(labels.getLocations());
+        processor.toChartData(uiComponent.getChart());
+        String nullStroke = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.NULL_STROKE.name());
+        uiComponent.getChart().getData().forEach(series -> series.getNode().setStyle(nullStroke));
     }
 
     public Map<String, Point2D> getDataPoints() { return processor.getDataPoints(); }
@@ -181,40 +341,147 @@ public class AppData implements DataComponent {
     }
 
     public void setRunButtonAction() {
-        final String CLASSIFIER = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.CLASSIFIER.name());
-        final String CLUSTERER = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.CLUSTERER.name());
         AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
-        ConfigurationWindow classificationWindow = uiComponent.getClassificationWindow();
-        ConfigurationWindow clusteringWindow = uiComponent.getClusteringWindow();
-        DataSet dataset = DataSet.fromTSDProcessor(uiComponent.getTextArea().getText());
-        if (algorithm != null && algorithm.finishedRunning()) {
+        if (algorithm != null && !algorithm.tocontinue() && algorithm.getSteps().isPaused()) {
+            if (algorithm.getClass().getName().equals(getAlgorithmFile())) { // goes on where it paused, with its data
+                algorithm.getSteps().step(algorithm.getUpdateInterval());
+                return;
+            }
+            endSteppedRun();
+        }
+        String filename = getAlgorithmFile();
+        // a mini-batch run on a previewed file samples its cache, without reading the file into memory
+        PointSource source = MiniBatchKMeansClusterer.class.getName().equals(filename) ? cachedPoints() : null;
+        DataSet dataset = null;
+        try {
+            if (source == null)
+                dataset = newDataSet();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        if (source == null && algorithm != null && algorithm.finishedRunning()) {
             uiComponent.clearChart();
             displayData();
         }
         uiComponent.setSelectedClusteringAlg(false);
         uiComponent.setSelectedClassificationAlg(false);
         try {
-            clear();
-            String text = uiComponent.getTextArea().getText();
-            processor.processString(text);
+            if (source == null)
+                reloadProcessor();
             try {
-                String filename = getAlgorithmFile();
-                Class<?> clazz = Class.forName(filename);
-                if (filename.contains(CLUSTERER)) {
-                    Constructor<?> konstructor = clazz.getDeclaredConstructor(DataSet.class, ApplicationTemplate.class, int.class, int.class, boolean.class, int.class);
-                    Algorithm algorithm = (Algorithm) (konstructor.newInstance(dataset, applicationTemplate, clusteringWindow.getMaxIter(), clusteringWindow.getUpdateInterval(), clusteringWindow.isContinuousRun(), clusteringWindow.getNumClusters()));
-                    this.algorithm = algorithm;
-                } else if (filename.contains(CLASSIFIER)) {
-                    Constructor<?> konstructor = clazz.getDeclaredConstructor(DataSet.class, ApplicationTemplate.class, int.class, int.class, boolean.class);
-                    Algorithm algorithm = (Algorithm) (konstructor.newInstance(dataset, applicationTemplate, classificationWindow.getMaxIter(), classificationWindow.getUpdateInterval(), classificationWindow.isContinuousRun()));
-                    this.algorithm = algorithm;
-                }
-            } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) { }
+                Algorithm algorithm = source != null ? newMiniBatchClusterer(source) : newAlgorithm(filename, dataset);
+                if (algorithm == null)
+                    return;
+                this.algorithm = algorithm;
+            } catch (InvocationTargetException e) { // the algorithm rejected the data
+                String title = applicationTemplate.manager.getPropertyValue(RUN_ERROR_TITLE.name());
+                ErrorDialog.getDialog().show(title, e.getCause().getMessage());
+                return;
+            } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+                return; // rather than running the previous algorithm again
+            }
 
-            new Thread(algorithm).start();
+            showRunSeed(algorithm);
+            if (!algorithm.tocontinue())
+                algorithm.getSteps().step(algorithm.getUpdateInterval());
+            run = AlgorithmExecutor.getExecutor().run(algorithm);
         } catch (Exception e) { /* ignore */ }
     }
 
+    /**
+     * Creates an algorithm of the specified class on the data set, configured from the configuration window of its
+     * type, the clustering window for a clusterer and the classification window for a classifier.
+     *
+     * @param filename the fully qualified name of the class of the algorithm
+     * @return the algorithm, or <code>null</code> if the class is neither a clusterer nor a classifier
+     */
+    public Algorithm newAlgorithm(String filename, DataSet dataset) throws ClassNotFoundException, NoSuchMethodException,
+                                                                           InstantiationException, IllegalAccessException,
+                                                                           InvocationTargetException {
+        final String CLASSIFIER = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.CLASSIFIER.name());
+        final String CLUSTERER = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.CLUSTERER.name());
+        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
+        ConfigurationWindow classificationWindow = uiComponent.getClassificationWindow();
+        ConfigurationWindow clusteringWindow = uiComponent.getClusteringWindow();
+        Class<?> clazz = Class.forName(filename);
+        if (filename.contains(CLUSTERER)) {
+            Constructor<?> konstructor = clazz.getDeclaredConstructor(DataSet.class, ApplicationTemplate.class, int.class, int.class, boolean.class, int.class);
+            Algorithm algorithm = (Algorithm) (konstructor.newInstance(dataset, applicationTemplate, clusteringWindow.getMaxIter(), clusteringWindow.getUpdateInterval(), clusteringWindow.isContinuousRun(), clusteringWindow.getNumClusters()));
+            configure((Clusterer) algorithm, clusteringWindow);
+            return algorithm;
+        } else if (filename.contains(CLASSIFIER)) {
+            Constructor<?> konstructor = clazz.getDeclaredConstructor(DataSet.class, ApplicationTemplate.class, int.class, int.class, boolean.class);
+            Algorithm algorithm = (Algorithm) (konstructor.newInstance(dataset, applicationTemplate, classificationWindow.getMaxIter(), classificationWindow.getUpdateInterval(), classificationWindow.isContinuousRun()));
+            classificationWindow.getSeed().ifPresent(((Classifier) algorithm)::setSeed);
+            ((Classifier) algorithm).setFullSpeed(classificationWindow.isFullSpeed());
+            if (algorithm instanceof LinearClassifier)
+                classificationWindow.getBatchSize().ifPresent(((LinearClassifier) algorithm)::setBatchSize);
+            return algorithm;
+        }
+        return null;
+    }
+
+    /** @return a mini-batch k-means clusterer of the locations of the source, configured from the clustering window */
+    private Algorithm newMiniBatchClusterer(PointSource source) {
+        ConfigurationWindow clusteringWindow = ((AppUI) applicationTemplate.getUIComponent()).getClusteringWindow();
+        MiniBatchKMeansClusterer clusterer = new MiniBatchKMeansClusterer(source, applicationTemplate, clusteringWindow.getMaxIter(), clusteringWindow.getUpdateInterval(), clusteringWindow.isContinuousRun(), clusteringWindow.getNumClusters());
+        configure(clusterer, clusteringWindow);
+        return clusterer;
+    }
+
+    private void configure(Clusterer clusterer, ConfigurationWindow clusteringWindow) {
+        clusterer.setTolerance(clusteringWindow.getTolerance());
+        clusteringWindow.getSeed().ifPresent(clusterer::setSeed);
+        clusterer.setFullSpeed(clusteringWindow.isFullSpeed());
+        if (clusterer instanceof KMeansClusterer)
+            ((KMeansClusterer) clusterer).setAccelerated(clusteringWindow.isAccelerated());
+        if (clusterer instanceof MiniBatchKMeansClusterer)
+            clusteringWindow.getBatchSize().ifPresent(((MiniBatchKMeansClusterer) clusterer)::setBatchSize);
+    }
+
+    /**
+     * Pauses the run in progress once its current iteration is done, or resumes it if it has paused within a step. The
+     * run's thread shows the state it paused in, and then turns the button into a resume button.
+     */
+    public void setPauseButtonAction() {
+        if (algorithm == null)
+            return;
+        StepControl steps = algorithm.getSteps();
+        if (steps.canResume()) {
+            steps.resume();
+        } else {
+            steps.pause();
+            ((AppUI) applicationTemplate.getUIComponent()).getPauseButton().setDisable(true); // until the run has paused
+        }
+    }
+
+    /** Ends a step-mode run that is waiting for its next step, so that the next run starts over. */
+    public void endSteppedRun() {
+        if (algorithm != null && !algorithm.tocontinue() && algorithm.getSteps().isPaused())
+            algorithm.getSteps().finish();
+    }
+
+    /** Cancels the run of the algorithm, if it has not ended, which then ends at its next iteration. */
+    public void cancelRun() {
+        if (run != null)
+            run.cancel(true);
+    }
+
+    /** @return the run of the algorithm, which is done once the algorithm has ended, or <code>null</code> before any run */
+    public Future<?> getRun() { return run; }
+
+    /**
+     * Shows the seed of the run in the seed field of its configuration window, so that a run whose seed was picked at
+     * random can be repeated by configuring it.
+     */
+    private void showRunSeed(Algorithm algorithm) {
+        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
+        ConfigurationWindow window = algorithm instanceof Clusterer ? uiComponent.getClusteringWindow()
+                                                                    : uiComponent.getClassificationWindow();
+        window.showLastSeed(algorithm.getSeed());
+    }
+
     public String getAlgorithmFile() {
 
         final String JAVA_EXT = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.JAVA_EXT.name());
@@ -237,6 +504,10 @@ public class AppData implements DataComponent {
             algorithmName = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.RANDOMCLUSTERER.name());
         } else if (((RadioButton) ((HBox) uiComponent.getVbox().getChildren().get(2)).getChildren().get(0)).isSelected()) {
             algorithmName = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.KMEANSCLUSTERER.name());
+        } else if (((RadioButton) ((HBox) uiComponent.getVbox().getChildren().get(3)).getChildren().get(0)).isSelected()) {
+            algorithmName = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.MINIBATCHKMEANSCLUSTERER.name());
+        } else if (((RadioButton) ((HBox) uiComponent.getVbox().getChildren().get(4)).getChildren().get(0)).isSelected()) {
+            algorithmName = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.LINEARCLASSIFIER.name());
         }
 
         String name = "";
@@ -0,0 +1,58 @@
+package dataprocessors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the distinct labels of a set of data instances as small <code>int</code> codes: 0, 1, 2, ... in the order the
+ * labels are first seen. Every instance can then store the code of its label instead of a {@link String}, and the
+ * {@link String} is only looked up again when the label is displayed or saved.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public final class LabelDictionary {
+
+    private final Map<String, Integer> codes  = new HashMap<>();
+    private final List<String>         labels = new ArrayList<>();
+
+    /** @return the code of the label, which is added to the dictionary if it is new */
+    public int encode(String label) {
+        Integer code = codes.get(label);
+        if (code == null) {
+            code = labels.size();
+            codes.put(label, code);
+            labels.add(label);
+        }
+        return code;
+    }
+
+    /** @return the code of the label, or -1 if it is not in the dictionary */
+    public int codeOf(String label) {
+        Integer code = codes.get(label);
+        return code == null ? -1 : code;
+    }
+
+    /** @return the label with the specified code */
+    public String decode(int code) { return labels.get(code); }
+
+    /** @return the single instance of the specified label that is kept by the dictionary */
+    public String intern(String label) { return decode(encode(label)); }
+
+    /** @return the number of distinct labels */
+    public int size() { return labels.size(); }
+
+    /** @return a dictionary of the same labels with the same codes, to which labels are then added separately */
+    public LabelDictionary copy() {
+        LabelDictionary copy = new LabelDictionary();
+        copy.codes.putAll(codes);
+        copy.labels.addAll(labels);
+        return copy;
+    }
+
+    public void clear() {
+        codes.clear();
+        labels.clear();
+    }
+}
@@ -0,0 +1,252 @@
+package dataprocessors;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a <code>.tsd</code> file by memory-mapping it in chunks and scanning the mapped bytes directly for the tab,
+ * comma and newline separators. Unlike reading the file line by line and splitting each line, no intermediate
+ * per-line {@link String} or array is created: the only objects allocated per instance are the name and label that
+ * are handed to the {@link RecordConsumer}, as parsed by a {@link TSDLineParser}.
+ * <p>
+ * Each chunk is cut back to its last newline, so a line never straddles two mappings. Contents that were already read
+ * into memory can be scanned in the same way with {@link #read(ByteBuffer, RecordConsumer)}.
+ * <p>
+ * A file compressed with gzip or deflate cannot be mapped; the compression is told by the extension:
+ * <code>.gz</code> for gzip, <code>.zlib</code> for zlib, and <code>.deflate</code> for deflate data, with or without a
+ * zlib header. A <code>.tsd</code> file is always plain text, and only a file with none of these extensions is
+ * recognized by its first bytes. A compressed file is decompressed as a stream instead, and the decompressed bytes are
+ * scanned from a buffer as they arrive, without writing them to disk first.
+ *
+ * @author The author of this document is Lily Zhong.
+ * @see TSDProcessor
+ */
+public final class MappedTSDReader {
+
+    /**
+     * Receives every data instance read from the file, in file order.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(String name, String label, double x, double y) throws Exception;
+    }
+
+    private static final long   CHUNK_SIZE         = 64L << 20; // 64 MB per mapping
+    private static final int    STREAM_BUFFER_SIZE = 1 << 20;   // 1 MB of decompressed data at a time
+    private static final String TSD_EXTENSION      = ".tsd";
+    private static final String GZIP_EXTENSION     = ".gz";
+    private static final String ZLIB_EXTENSION     = ".zlib";
+    private static final String DEFLATE_EXTENSION  = ".deflate";
+
+    private static final int PLAIN       = 0;
+    private static final int GZIP        = 1;
+    private static final int ZLIB        = 2; // deflate data with a zlib header
+    private static final int RAW_DEFLATE = 3;
+
+    private final RecordConsumer consumer;
+    private final TSDLineParser  parser     = new TSDLineParser();
+    private int    lineNumber = 1;
+    private int    blankLine  = 0; // first blank line not yet followed by data, 0 if none
+    private int    records    = 0;
+
+    private MappedTSDReader(RecordConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Reads every data instance in the specified file and hands it to the consumer.
+     *
+     * @param tsdFilePath the file to read
+     * @param consumer    the consumer of the data instances
+     * @return the number of data instances read
+     * @throws IOException                           if the file cannot be mapped
+     * @throws TSDProcessor.InvalidLineException if a line does not follow the <code>.tsd</code> data format, or if
+     *                                               the consumer rejects an instance
+     */
+    public static int read(Path tsdFilePath, RecordConsumer consumer) throws IOException, TSDProcessor.InvalidLineException {
+        if (isCompressed(tsdFilePath)) {
+            try (InputStream in = newInputStream(tsdFilePath)) {
+                return read(in, consumer);
+            }
+        }
+        MappedTSDReader reader = new MappedTSDReader(consumer);
+        try (FileChannel channel = FileChannel.open(tsdFilePath, StandardOpenOption.READ)) {
+            long size     = channel.size();
+            long position = 0;
+            long window   = CHUNK_SIZE;
+            while (position < size) {
+                long length = Math.min(window, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int limit = (int) length;
+                if (position + length < size) {
+                    limit = lastNewline(buffer, limit) + 1;
+                    if (limit == 0) { // a single line is longer than the window
+                        if (window >= Integer.MAX_VALUE)
+                            throw new IOException(String.format("Line %d is too long to be mapped.", reader.lineNumber));
+                        window = Math.min(window * 2, Integer.MAX_VALUE);
+                        continue;
+                    }
+                }
+                reader.scan(buffer, limit);
+                position += limit;
+            }
+        }
+        return reader.records;
+    }
+
+    /**
+     * Reads every data instance in a buffer that already holds the contents of a <code>.tsd</code> file, from index
+     * 0 up to its limit.
+     *
+     * @param bytes    the contents of the file
+     * @param consumer the consumer of the data instances
+     * @return the number of data instances read
+     * @throws TSDProcessor.InvalidLineException if a line does not follow the <code>.tsd</code> data format, or if
+     *                                           the consumer rejects an instance
+     */
+    public static int read(ByteBuffer bytes, RecordConsumer consumer) throws TSDProcessor.InvalidLineException {
+        MappedTSDReader reader = new MappedTSDReader(consumer);
+        reader.scan(bytes, bytes.limit());
+        return reader.records;
+    }
+
+    /**
+     * Reads every data instance from a stream of <code>.tsd</code> data, such as a decompressing stream. The data is
+     * scanned from a buffer one block at a time, each block being cut back to its last newline.
+     *
+     * @param in       the stream of data, which is not closed
+     * @param consumer the consumer of the data instances
+     * @return the number of data instances read
+     * @throws IOException                       if the stream cannot be read
+     * @throws TSDProcessor.InvalidLineException if a line does not follow the <code>.tsd</code> data format, or if
+     *                                           the consumer rejects an instance
+     */
+    public static int read(InputStream in, RecordConsumer consumer) throws IOException, TSDProcessor.InvalidLineException {
+        MappedTSDReader reader = new MappedTSDReader(consumer);
+        byte[]     bytes  = new byte[STREAM_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int        filled = 0;
+        int        read;
+        while ((read = in.read(bytes, filled, bytes.length - filled)) >= 0) {
+            filled += read;
+            int limit = lastNewline(buffer, filled) + 1;
+            if (limit == 0) { // no complete line yet
+                if (filled == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    buffer = ByteBuffer.wrap(bytes);
+                }
+                continue;
+            }
+            reader.scan(buffer, limit);
+            System.arraycopy(bytes, limit, bytes, 0, filled - limit);
+            filled -= limit;
+        }
+        reader.scan(buffer, filled);
+        return reader.records;
+    }
+
+    /** @return whether the file holds gzip or deflate data, rather than plain <code>.tsd</code> data */
+    public static boolean isCompressed(Path tsdFilePath) throws IOException {
+        try (InputStream in = Files.newInputStream(tsdFilePath)) {
+            return compression(tsdFilePath, in.read(), in.read()) != PLAIN;
+        }
+    }
+
+    /**
+     * Opens a stream of the <code>.tsd</code> data in a file, which is decompressed on the fly if the file holds gzip
+     * or deflate data.
+     *
+     * @param tsdFilePath the file to read
+     * @return a stream of the plain <code>.tsd</code> data
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream newInputStream(Path tsdFilePath) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(tsdFilePath), 1 << 16);
+        in.mark(2);
+        int compression = compression(tsdFilePath, in.read(), in.read());
+        in.reset();
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(in, 1 << 16);
+            case ZLIB:
+                return new InflaterInputStream(in, new Inflater(), 1 << 16);
+            case RAW_DEFLATE:
+                return new InflaterInputStream(in, new Inflater(true), 1 << 16);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * @return how the data of the file, starting with the two specified bytes, is compressed, as told by the file's
+     * extension, and only by the bytes if the extension is none of those of the <code>.tsd</code> files
+     */
+    private static int compression(Path tsdFilePath, int first, int second) {
+        String name = tsdFilePath.getFileName().toString();
+        if (name.endsWith(TSD_EXTENSION))
+            return PLAIN;
+        if (name.endsWith(GZIP_EXTENSION))
+            return GZIP;
+        if (name.endsWith(ZLIB_EXTENSION))
+            return ZLIB;
+        if (name.endsWith(DEFLATE_EXTENSION))
+            return hasZlibHeader(first, second) ? ZLIB : RAW_DEFLATE;
+        if (first == 0x1f && second == 0x8b)
+            return GZIP;
+        if (hasZlibHeader(first, second))
+            return ZLIB;
+        return PLAIN;
+    }
+
+    private static boolean hasZlibHeader(int first, int second) {
+        return (first & 0x0f) == 8 && (first >> 4) <= 7 && second >= 0 && ((first << 8) | second) % 31 == 0;
+    }
+
+    private static int lastNewline(ByteBuffer buffer, int limit) {
+        for (int i = limit - 1; i >= 0; i--)
+            if (buffer.get(i) == '\n')
+                return i;
+        return -1;
+    }
+
+    private void scan(ByteBuffer buffer, int limit) throws TSDProcessor.InvalidLineException {
+        int start = 0;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n')
+                end++;
+            int lineEnd = (end > start && buffer.get(end - 1) == '\r') ? end - 1 : end;
+            if (lineEnd == start) {
+                if (blankLine == 0)
+                    blankLine = lineNumber;
+            } else {
+                if (blankLine != 0)
+                    throw new TSDProcessor.InvalidLineException(blankLine, TSDLineParser.blankLine());
+                parseLine(buffer, start, lineEnd);
+                records++;
+            }
+            lineNumber++;
+            start = end + 1;
+        }
+    }
+
+    private void parseLine(ByteBuffer buffer, int start, int end) throws TSDProcessor.InvalidLineException {
+        try {
+            parser.parse(buffer, start, end);
+            consumer.accept(parser.name(), parser.label(), parser.x(), parser.y());
+        } catch (Exception e) {
+            throw new TSDProcessor.InvalidLineException(lineNumber, e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package dataprocessors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses <code>.tsd</code> data on a {@link ForkJoinPool}. The input is cut into chunks at newline boundaries and the
+ * chunks are parsed independently of each other. The parsed instances are then handed to the consumer chunk by chunk,
+ * in input order, so an insertion-ordered map filled by the consumer ends up exactly as it would after a sequential
+ * parse.
+ * <p>
+ * Each chunk numbers its own lines starting from 1; the merge adds the number of lines in all the chunks before it,
+ * so every error is still reported against its line in the whole input.
+ *
+ * @author The author of this document is Lily Zhong.
+ * @see TSDProcessor#processString(String)
+ */
+public final class ParallelTSDParser {
+
+    private static final int MIN_CHUNK_LENGTH = 1 << 16;
+
+    private ParallelTSDParser() { /* static methods only */ }
+
+    /**
+     * Parses the data in parallel and hands every data instance to the consumer, in input order.
+     *
+     * @param tsdString the input data provided as a single {@link String}
+     * @param consumer  the consumer of the data instances
+     * @return the number of data instances parsed
+     * @throws TSDProcessor.InvalidLineException for the first line that does not follow the <code>.tsd</code> data
+     *                                           format, or that the consumer rejects
+     */
+    public static int parse(String tsdString, MappedTSDReader.RecordConsumer consumer) throws TSDProcessor.InvalidLineException {
+        List<Chunk> chunks = split(tsdString, ForkJoinPool.getCommonPoolParallelism() * 4);
+        ForkJoinPool.commonPool().invoke(new ParseTask(tsdString, chunks, 0, chunks.size()));
+
+        int lineOffset   = 0;
+        int pendingBlank = 0; // first blank line of a trailing run, in whole-input numbering
+        int count        = 0;
+        for (Chunk chunk : chunks) {
+            if (pendingBlank != 0 && (chunk.size > 0 || chunk.error != null))
+                throw new TSDProcessor.InvalidLineException(pendingBlank, TSDLineParser.blankLine());
+            for (int i = 0; i < chunk.size; i++) {
+                try {
+                    consumer.accept(chunk.names[i], chunk.labels[i], chunk.xs[i], chunk.ys[i]);
+                } catch (Exception e) {
+                    throw new TSDProcessor.InvalidLineException(lineOffset + chunk.lines[i], e);
+                }
+                count++;
+            }
+            if (chunk.error != null)
+                throw new TSDProcessor.InvalidLineException(lineOffset + chunk.errorLine, chunk.error);
+            if (pendingBlank == 0 && chunk.trailingBlank != 0)
+                pendingBlank = lineOffset + chunk.trailingBlank;
+            lineOffset += chunk.lineCount;
+        }
+        return count;
+    }
+
+    private static List<Chunk> split(String text, int targetChunks) {
+        int chunkLength = Math.max(MIN_CHUNK_LENGTH, text.length() / Math.max(1, targetChunks) + 1);
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + chunkLength);
+            if (end < text.length()) {
+                int newline = text.indexOf('\n', end - 1);
+                end = newline < 0 ? text.length() : newline + 1;
+            }
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static final class ParseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String      text;
+        private final List<Chunk> chunks;
+        private final int         from;
+        private final int         to;
+
+        ParseTask(String text, List<Chunk> chunks, int from, int to) {
+            this.text = text;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from)
+                    chunks.get(from).parse(text);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ParseTask(text, chunks, from, mid), new ParseTask(text, chunks, mid, to));
+        }
+    }
+
+    /** The instances parsed from one newline-aligned slice of the input. */
+    private static final class Chunk {
+
+        private final int           start;
+        private final int           end;
+        private final TSDLineParser parser = new TSDLineParser();
+
+        String[] names  = new String[64];
+        String[] labels = new String[64];
+        double[] xs     = new double[64];
+        double[] ys     = new double[64];
+        int[]    lines  = new int[64];
+        int      size;
+        int      lineCount;
+        int      trailingBlank; // first line of the blank lines ending this chunk, 0 if none
+        int      errorLine;
+        Exception error;
+
+        Chunk(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void parse(String text) {
+            int position = start;
+            while (position < end) {
+                int newline = text.indexOf('\n', position);
+                int lineEnd = (newline < 0 || newline >= end) ? end : newline;
+                lineCount++;
+                if (lineEnd == position) {
+                    if (trailingBlank == 0)
+                        trailingBlank = lineCount;
+                } else if (trailingBlank != 0) {
+                    fail(trailingBlank, TSDLineParser.blankLine());
+                    return;
+                } else {
+                    try {
+                        parser.parse(text, position, lineEnd);
+                        add(parser.name(), parser.label(), parser.x(), parser.y());
+                    } catch (Exception e) {
+                        fail(lineCount, e);
+                        return;
+                    }
+                }
+                position = lineEnd + 1;
+            }
+        }
+
+        private void add(String name, String label, double x, double y) {
+            if (size == names.length) {
+                int capacity = size * 2;
+                names = Arrays.copyOf(names, capacity);
+                labels = Arrays.copyOf(labels, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+            }
+            names[size] = name;
+            labels[size] = label;
+            xs[size] = x;
+            ys[size] = y;
+            lines[size] = lineCount;
+            size++;
+        }
+
+        private void fail(int line, Exception e) {
+            trailingBlank = 0;
+            errorLine = line;
+            error = e;
+        }
+    }
+}
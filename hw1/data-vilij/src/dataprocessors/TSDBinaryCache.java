@@ -0,0 +1,246 @@
+package dataprocessors;
+
+import algorithms.PointSource;
+import javafx.geometry.Point2D;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A binary, columnar copy of a parsed <code>.tsd</code> file, kept in a sidecar file next to it (the same name with
+ * <code>.tsdb</code> appended). Reopening the file then reads the cache through a memory map instead of parsing the
+ * text again.
+ * <p>
+ * The cache holds, after a header with the size and the modification time of the <code>.tsd</code> file it was made
+ * from, a dictionary of the distinct labels, the label index of every instance, the x and the y coordinates as two
+ * packed columns of doubles, and finally the names. A cache whose header does not match the current <code>.tsd</code>
+ * file is stale, and is ignored. A file in a directory that cannot be written to is not cached.
+ *
+ * @author The author of this document is Lily Zhong.
+ * @see TSDProcessor#processCachedFile(Path, java.util.concurrent.Executor)
+ */
+public final class TSDBinaryCache {
+
+    private static final int    MAGIC     = 0x54534442; // "TSDB"
+    private static final int    VERSION   = 1;
+    private static final String EXTENSION = ".tsdb";
+
+    private TSDBinaryCache() { /* static methods only */ }
+
+    /** @return the sidecar cache of the specified <code>.tsd</code> file */
+    public static Path cachePath(Path tsdFilePath) {
+        return tsdFilePath.resolveSibling(tsdFilePath.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Reads every data instance of the specified <code>.tsd</code> file from its cache, if it has an up-to-date one,
+     * and hands it to the consumer in file order.
+     *
+     * @param tsdFilePath the <code>.tsd</code> file
+     * @param consumer    the consumer of the data instances
+     * @return the number of data instances read, or -1 if the file has no up-to-date cache
+     * @throws IOException                       if the cache cannot be read, or is corrupt
+     * @throws TSDProcessor.InvalidLineException if the consumer rejects an instance
+     */
+    public static int read(Path tsdFilePath, MappedTSDReader.RecordConsumer consumer) throws IOException, TSDProcessor.InvalidLineException {
+        Path cachePath = cachePath(tsdFilePath);
+        if (!Files.isRegularFile(cachePath))
+            return -1;
+        BasicFileAttributes attributes = Files.readAttributes(tsdFilePath, BasicFileAttributes.class);
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                return -1;
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 32 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION ||
+                buffer.getLong() != attributes.size() || buffer.getLong() != attributes.lastModifiedTime().toMillis())
+                return -1;
+            int      count   = buffer.getInt();
+            String[] labels  = new String[buffer.getInt()];
+            Decoder  decoder = new Decoder();
+            for (int i = 0; i < labels.length; i++)
+                labels[i] = decoder.getString(buffer);
+
+            IntBuffer codes = buffer.asIntBuffer();
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            DoubleBuffer xs = buffer.asDoubleBuffer();
+            buffer.position(buffer.position() + count * Double.BYTES);
+            DoubleBuffer ys = buffer.asDoubleBuffer();
+            buffer.position(buffer.position() + count * Double.BYTES);
+            for (int i = 0; i < count; i++) {
+                String name = decoder.getString(buffer);
+                try {
+                    consumer.accept(name, labels[codes.get(i)], xs.get(i), ys.get(i));
+                } catch (Exception e) {
+                    throw new TSDProcessor.InvalidLineException(i + 1, e);
+                }
+            }
+            return count;
+        } catch (RuntimeException e) { // e.g. a truncated cache
+            throw new IOException(String.format("Corrupt cache '%s'.", cachePath), e);
+        }
+    }
+
+    /**
+     * Maps the x and the y columns of the cache of the specified <code>.tsd</code> file, if it has an up-to-date one,
+     * without reading the labels or the names. The locations are read from the mapping only as they are asked for, so
+     * they can be sampled in a bounded amount of memory however many instances the file holds.
+     *
+     * @param tsdFilePath the <code>.tsd</code> file
+     * @return the locations of the file's instances in file order, or <code>null</code> if the file has no up-to-date
+     * cache, or if a column is too large to be mapped
+     * @throws IOException if the cache cannot be read
+     */
+    public static PointSource openPoints(Path tsdFilePath) throws IOException {
+        Path cachePath = cachePath(tsdFilePath);
+        if (!Files.isRegularFile(cachePath))
+            return null;
+        BasicFileAttributes attributes = Files.readAttributes(tsdFilePath, BasicFileAttributes.class);
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(32);
+            if (!readFully(channel, header, 0) || header.getInt(0) != MAGIC || header.getInt(4) != VERSION ||
+                header.getLong(8) != attributes.size() || header.getLong(16) != attributes.lastModifiedTime().toMillis())
+                return null;
+            int        count    = header.getInt(24);
+            long       position = header.capacity();
+            ByteBuffer length   = ByteBuffer.allocate(Integer.BYTES);
+            for (int i = header.getInt(28); i > 0; i--) { // skips the labels
+                length.clear();
+                if (!readFully(channel, length, position))
+                    return null;
+                position += Integer.BYTES + length.getInt(0);
+            }
+            position += (long) count * Integer.BYTES;
+            long columnSize = (long) count * Double.BYTES;
+            if (columnSize > Integer.MAX_VALUE || position + 2 * columnSize > channel.size())
+                return null;
+            DoubleBuffer xs = channel.map(FileChannel.MapMode.READ_ONLY, position, columnSize).asDoubleBuffer();
+            DoubleBuffer ys = channel.map(FileChannel.MapMode.READ_ONLY, position + columnSize, columnSize).asDoubleBuffer();
+            return new MappedPoints(xs, ys); // a mapping stays valid once its channel is closed
+        }
+    }
+
+    /** The locations in the two memory-mapped columns of a cache. */
+    private static final class MappedPoints implements PointSource {
+
+        private final DoubleBuffer xs;
+        private final DoubleBuffer ys;
+
+        MappedPoints(DoubleBuffer xs, DoubleBuffer ys) {
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        @Override
+        public int size() { return xs.limit(); }
+
+        @Override
+        public double getX(int index) { return xs.get(index); }
+
+        @Override
+        public double getY(int index) { return ys.get(index); }
+    }
+
+    /**
+     * Writes the cache of the specified <code>.tsd</code> file, replacing any previous one, unless the file's directory
+     * cannot be written to. The size and the modification time must be those of the file <em>before</em> it was
+     * parsed, so that a file changed since then does not match its cache.
+     * <p>
+     * The cache is written to a temporary file of its own in the same directory, which is then moved in place, so a
+     * cache is only ever seen whole, however many writers there are. A failed write leaves no file behind.
+     *
+     * @param tsdFilePath the <code>.tsd</code> file
+     * @param attributes  the attributes of the file when it was parsed
+     * @param labels      the name-to-label map parsed from the file
+     * @param points      the name-to-location map parsed from the file
+     * @throws IOException if the cache cannot be written
+     */
+    public static void write(Path tsdFilePath, BasicFileAttributes attributes, Map<String, String> labels,
+                             Map<String, Point2D> points) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] codes = new int[labels.size()];
+        int i = 0;
+        for (String label : labels.values()) {
+            Integer code = dictionary.putIfAbsent(label, dictionary.size());
+            codes[i++] = code == null ? dictionary.size() - 1 : code;
+        }
+        String[] distinct = new String[dictionary.size()];
+        dictionary.forEach((label, code) -> distinct[code] = label);
+
+        Path cachePath = cachePath(tsdFilePath);
+        Path directory = cachePath.toAbsolutePath().getParent();
+        if (directory == null || !Files.isWritable(directory))
+            return;
+        Path partPath = Files.createTempFile(directory, cachePath.getFileName().toString(), ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partPath), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(attributes.size());
+            out.writeLong(attributes.lastModifiedTime().toMillis());
+            out.writeInt(codes.length);
+            out.writeInt(distinct.length);
+            for (String label : distinct)
+                putString(out, label);
+            for (int code : codes)
+                out.writeInt(code);
+            for (String name : labels.keySet())
+                out.writeDouble(points.get(name).getX());
+            for (String name : labels.keySet())
+                out.writeDouble(points.get(name).getY());
+            for (String name : labels.keySet())
+                putString(out, name);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partPath);
+            throw e;
+        }
+        try {
+            Files.move(partPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(partPath);
+            throw e;
+        }
+    }
+
+    /** @return whether the buffer was filled from the specified position, rather than running into the end of file */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                return false;
+            position += read;
+        }
+        return true;
+    }
+
+    /** Decodes the strings of a cache through one buffer, which grows to the longest string so far. */
+    private static final class Decoder {
+
+        private byte[] bytes = new byte[64];
+
+        String getString(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            if (bytes.length < length)
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            buffer.get(bytes, 0, length);
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void putString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
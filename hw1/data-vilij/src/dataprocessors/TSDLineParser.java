@@ -0,0 +1,221 @@
+package dataprocessors;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses a single line of <code>.tsd</code> data, i.e., <code>name\tlabel\tx,y</code>, given as a range of a
+ * {@link CharSequence} or of a {@link ByteBuffer}. The fields are located by their offsets and the coordinates are
+ * read in place by a fast-path decimal parser, so the only objects allocated per line are the name and label
+ * {@link String}s that the caller keeps. Bytes are read through a view of them as characters, so both inputs go through
+ * the same code and fail with the same errors.
+ * <p>
+ * As with splitting the line on tabs and commas, any fields after the location, and anything after the second
+ * coordinate, are ignored. A parser holds the fields of the last parsed line, so each thread needs its own instance.
+ *
+ * @author The author of this document is Lily Zhong.
+ * @see TSDProcessor
+ */
+public final class TSDLineParser {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final String BLANK_LINE = "Blank line.";
+
+    private final ByteChars chars = new ByteChars();
+    private String name;
+    private String label;
+    private double x;
+    private double y;
+    private int    nameEnd;  // the tab after the name of the last parsed line
+    private int    labelEnd; // the tab after its label
+    private byte[] scratch = new byte[64];
+
+    public String name()  { return name; }
+
+    public String label() { return label; }
+
+    public double x()     { return x; }
+
+    public double y()     { return y; }
+
+    /**
+     * Parses the characters of <code>text</code> from <code>from</code> (inclusive) to <code>to</code> (exclusive),
+     * which must not include the line terminator.
+     *
+     * @throws IllegalArgumentException if a field is missing, or a coordinate is not a number
+     */
+    public void parse(CharSequence text, int from, int to) {
+        parseFields(text, from, to);
+        name = text.subSequence(from, nameEnd).toString();
+        label = text.subSequence(nameEnd + 1, labelEnd).toString();
+    }
+
+    /**
+     * Parses the UTF-8 bytes of <code>bytes</code> from <code>from</code> (inclusive) to <code>to</code>
+     * (exclusive), which must not include the line terminator. The position and limit of the buffer are not used.
+     *
+     * @throws IllegalArgumentException if a field is missing, or a coordinate is not a number
+     */
+    public void parse(ByteBuffer bytes, int from, int to) {
+        chars.bytes = bytes;
+        parseFields(chars, from, to);
+        name = decode(bytes, from, nameEnd);
+        label = decode(bytes, nameEnd + 1, labelEnd);
+    }
+
+    /**
+     * @return the error of a blank line that data follows, which every reader of the <code>.tsd</code> data format
+     * reports alike, whether it reads the line or skips it
+     */
+    public static IllegalArgumentException blankLine() { return new IllegalArgumentException(BLANK_LINE); }
+
+    /** Locates the fields of a line, and parses its coordinates; the name and the label are left to the caller. */
+    private void parseFields(CharSequence text, int from, int to) {
+        if (from == to)
+            throw blankLine();
+        nameEnd = indexOf(text, '\t', from, to);
+        if (nameEnd < 0)
+            throw new IllegalArgumentException("Missing label.");
+        labelEnd = indexOf(text, '\t', nameEnd + 1, to);
+        if (labelEnd < 0)
+            throw new IllegalArgumentException("Missing location.");
+        int locationEnd = indexOf(text, '\t', labelEnd + 1, to);
+        if (locationEnd < 0)
+            locationEnd = to;
+        int comma = indexOf(text, ',', labelEnd + 1, locationEnd);
+        if (comma < 0)
+            throw new IllegalArgumentException("Missing y-coordinate.");
+        int yEnd = indexOf(text, ',', comma + 1, locationEnd);
+        if (yEnd < 0)
+            yEnd = locationEnd;
+
+        x = parseDouble(text, labelEnd + 1, comma);
+        y = parseDouble(text, comma + 1, yEnd);
+    }
+
+    private static int indexOf(CharSequence text, char c, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (text.charAt(i) == c)
+                return i;
+        return -1;
+    }
+
+    private String decode(ByteBuffer bytes, int from, int to) {
+        int length = to - from;
+        if (bytes.hasArray())
+            return new String(bytes.array(), bytes.arrayOffset() + from, length, StandardCharsets.UTF_8);
+        if (scratch.length < length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        for (int i = 0; i < length; i++)
+            scratch[i] = bytes.get(from + i);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The bytes of a buffer seen as characters, one per byte, which is how the separators and the digits read, being
+     * ASCII. A range of it is only turned into a {@link String} by decoding it as UTF-8.
+     */
+    private final class ByteChars implements CharSequence {
+
+        private ByteBuffer bytes;
+
+        @Override
+        public int length() { return bytes.capacity(); }
+
+        @Override
+        public char charAt(int index) { return (char) (bytes.get(index) & 0xff); }
+
+        @Override
+        public CharSequence subSequence(int start, int end) { return decode(bytes, start, end); }
+
+        @Override
+        public String toString() { return decode(bytes, 0, bytes.capacity()); }
+    }
+
+    /**
+     * Parses a decimal number of the form <code>[sign]digits[.digits][(e|E)[sign]digits]</code>, surrounded by
+     * optional whitespace, without creating a {@link String}. When the significand fits in 53 bits and the decimal
+     * exponent is at most 22 in magnitude, the result is exact, being a single correctly-rounded multiplication or
+     * division. Anything else, including every malformed input, is handed to {@link Double#parseDouble(String)}, so
+     * the result and the errors are always the same as those of that method.
+     *
+     * @throws NumberFormatException if the characters do not form a number
+     */
+    public static double parseDouble(CharSequence text, int from, int to) {
+        while (from < to && text.charAt(from) <= ' ')
+            from++;
+        while (to > from && text.charAt(to - 1) <= ' ')
+            to--;
+        int i = from;
+        boolean negative = false;
+        if (i < to && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+            negative = text.charAt(i++) == '-';
+        long significand = 0;
+        int digits = 0;
+        int exponent = 0;
+        int intStart = i;
+        char c;
+        while (i < to && (c = text.charAt(i)) >= '0' && c <= '9') {
+            significand = significand * 10 + (c - '0');
+            digits++;
+            i++;
+        }
+        boolean hasDigits = i > intStart;
+        if (i < to && text.charAt(i) == '.') {
+            int fracStart = ++i;
+            while (i < to && (c = text.charAt(i)) >= '0' && c <= '9') {
+                significand = significand * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+            exponent -= i - fracStart;
+            hasDigits |= i > fracStart;
+        }
+        if (hasDigits && i < to && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (j < to && (text.charAt(j) == '-' || text.charAt(j) == '+'))
+                negativeExponent = text.charAt(j++) == '-';
+            int expStart = j;
+            int explicit = 0;
+            while (j < to && (c = text.charAt(j)) >= '0' && c <= '9' && explicit < 10000) {
+                explicit = explicit * 10 + (c - '0');
+                j++;
+            }
+            if (j > expStart) {
+                exponent += negativeExponent ? -explicit : explicit;
+                i = j;
+            }
+        }
+        if (!hasDigits || i != to || !fitsFastPath(significand, digits, exponent))
+            return Double.parseDouble(text.subSequence(from, to).toString());
+        return fastPath(negative, significand, exponent);
+    }
+
+    /**
+     * Parses a decimal number from a range of ASCII bytes; see {@link #parseDouble(CharSequence, int, int)}.
+     *
+     * @throws NumberFormatException if the bytes do not form a number
+     */
+    public double parseDouble(ByteBuffer bytes, int from, int to) {
+        chars.bytes = bytes;
+        return parseDouble(chars, from, to);
+    }
+
+    private static boolean fitsFastPath(long significand, int digits, int exponent) {
+        return digits <= 18 && significand <= (1L << 53) && exponent >= -22 && exponent <= 22;
+    }
+
+    private static double fastPath(boolean negative, long significand, int exponent) {
+        double value = significand;
+        if (exponent < 0)
+            value /= POWERS_OF_TEN[-exponent];
+        else if (exponent > 0)
+            value *= POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+}
@@ -4,11 +4,15 @@ import algorithms.DataSet;
 import javafx.geometry.Point2D;
 import javafx.scene.chart.XYChart;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * The data files used by this data visualization applications follow a tab-separated format, where each data point is
@@ -31,70 +35,289 @@ public final class TSDProcessor {
         }
     }
 
+    public static class DuplicateNameException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+
+        public DuplicateNameException(String name) {
+            super(String.format("Duplicate name '%s'.", name));
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+    }
+
+    /**
+     * Signals that a specific line of the input does not follow the <code>.tsd</code> data format. The message ends
+     * with the (1-based) line number on a line of its own. A repeated instance name is reported with a
+     * {@link DuplicateNameException} as the cause.
+     */
+    public static class InvalidLineException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int lineNumber;
+
+        public InvalidLineException(int lineNumber, String message) {
+            super(message + "\n" + lineNumber);
+            this.lineNumber = lineNumber;
+        }
+
+        public InvalidLineException(int lineNumber, Exception cause) {
+            super(cause.getClass().getSimpleName() + ": " + cause.getMessage() + "\n" + lineNumber, cause);
+            this.lineNumber = lineNumber;
+        }
+
+        public int getLineNumber() { return lineNumber; }
+
+        public boolean isDuplicate() { return getCause() instanceof DuplicateNameException; }
+    }
+
+    /** The number of series that the chart's style sheet gives distinct colors to. */
+    public static final int DEFAULT_PALETTE_SIZE = 8;
+    private static final double GOLDEN_ANGLE = 137.50776; // degrees
+
+    /** Inputs at least this long are parsed on all cores by {@link ParallelTSDParser}. */
+    public static final int PARALLEL_THRESHOLD = 1 << 20;
+
     private Map<String, String> dataLabels;
     private Map<String, Point2D> dataPoints;
+    private LabelDictionary dictionary; // keeps a single instance of each label read
     protected AtomicBoolean hadAnError;
     protected AtomicInteger lineNumber;
 
     public TSDProcessor() {
         dataLabels = new LinkedHashMap<>();
         dataPoints = new LinkedHashMap<>();
+        dictionary = new LabelDictionary();
         hadAnError = new AtomicBoolean(false);
         lineNumber = new AtomicInteger(1);
     }
 
     /**
-     * Processes the data and populated two {@link Map} objects with the data.
+     * Processes the data and populated two {@link Map} objects with the data, as parsed by
+     * {@link #parse(String, MappedTSDReader.RecordConsumer)}, which parses long inputs in parallel.
+     * <p>
+     * Duplicate names are detected in the same pass, as the names are added to the maps, so the data is never read a
+     * second time to look for them.
+     *
+     * @param tsdString the input data provided as a single {@link String}
+     * @throws InvalidLineException for the first line that does not follow the <code>.tsd</code> data format, or that
+     *                              repeats the name of an earlier line
+     */
+    public void processString(String tsdString) throws InvalidLineException {
+        try {
+            parse(tsdString, this::addInstance);
+        } catch (InvalidLineException e) {
+            hadAnError.set(true);
+            clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Parses the data and hands every data instance to the consumer, in input order. Inputs of at least
+     * {@link #PARALLEL_THRESHOLD} characters are parsed by a {@link ParallelTSDParser}; either way, the same input is
+     * accepted, and the same error is reported against the same line. Blank lines at the end of the input are ignored.
      *
      * @param tsdString the input data provided as a single {@link String}
-     * @throws Exception if the input string does not follow the <code>.tsd</code> data format
+     * @param consumer  the consumer of the data instances
+     * @throws InvalidLineException for the first line that does not follow the <code>.tsd</code> data format, or that
+     *                              the consumer rejects
      */
-    public void processString(String tsdString) throws Exception {
-        StringBuilder errorMessage = new StringBuilder();
-        Stream.of(tsdString.split("\n")).map(line -> Arrays.asList(line.split("\t"))).forEach(list -> {
+    public static void parse(String tsdString, MappedTSDReader.RecordConsumer consumer) throws InvalidLineException {
+        if (tsdString.length() >= PARALLEL_THRESHOLD) {
+            ParallelTSDParser.parse(tsdString, consumer);
+            return;
+        }
+        TSDLineParser parser = new TSDLineParser();
+        int end = tsdString.length();
+        while (end > 0 && tsdString.charAt(end - 1) == '\n') // trailing blank lines are ignored
+            end--;
+        int position = 0;
+        for (int line = 1; position < end; line++) {
+            int newline = tsdString.indexOf('\n', position);
+            int lineEnd = (newline < 0 || newline > end) ? end : newline;
             try {
-                String name = checkedname(list.get(0));
-                String label = list.get(1);
-                String[] pair = list.get(2).split(",");
-                Point2D point = new Point2D(Double.parseDouble(pair[0]), Double.parseDouble(pair[1]));
-                dataLabels.put(name, label);
-                dataPoints.put(name, point);
-                lineNumber.getAndIncrement();
+                parser.parse(tsdString, position, lineEnd);
+                consumer.accept(parser.name(), parser.label(), parser.x(), parser.y());
             } catch (Exception e) {
-                errorMessage.setLength(0);
-                errorMessage.append(e.getClass().getSimpleName()).append(": ").append(e.getMessage());
-                errorMessage.append("\n");
-                errorMessage.append(lineNumber);
-                hadAnError.set(true);
-                clear();
+                throw new InvalidLineException(line, e);
             }
+            position = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Processes the data on a {@link java.util.concurrent.ForkJoinPool}, using a {@link ParallelTSDParser}. The two
+     * {@link Map} objects are populated in input order, exactly as by a sequential parse.
+     *
+     * @param tsdString the input data provided as a single {@link String}
+     * @throws InvalidLineException for the first line that does not follow the <code>.tsd</code> data format, or that
+     *                              repeats the name of an earlier line
+     */
+    public void processStringInParallel(String tsdString) throws InvalidLineException {
+        try {
+            ParallelTSDParser.parse(tsdString, this::addInstance);
+        } catch (InvalidLineException e) {
+            hadAnError.set(true);
+            clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Processes the data directly from a file, using a {@link MappedTSDReader} instead of first reading the whole
+     * file into a single {@link String}.
+     *
+     * @param tsdFilePath the <code>.tsd</code> file to read
+     * @throws IOException          if the file cannot be read
+     * @throws InvalidLineException if the file does not follow the <code>.tsd</code> data format, or repeats a name
+     */
+    public void processFile(Path tsdFilePath) throws IOException, InvalidLineException {
+        try {
+            MappedTSDReader.read(tsdFilePath, this::addInstance);
+        } catch (InvalidLineException e) {
+            hadAnError.set(true);
+            clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Processes the data of a file from its {@link TSDBinaryCache} if it has an up-to-date one. Otherwise, the file is
+     * parsed by {@link #processFile(Path)} and the result is cached for the next time the file is opened.
+     * <p>
+     * The cache is written from the maps just parsed, which the processor never changes afterwards: it only ever
+     * replaces them, as {@link #clear()} does before the next parse.
+     *
+     * @param tsdFilePath the <code>.tsd</code> file to read
+     * @param cacheWriter runs the write of the cache, e.g. in the background
+     * @throws IOException          if the file cannot be read
+     * @throws InvalidLineException if the file does not follow the <code>.tsd</code> data format, or repeats a name
+     */
+    public void processCachedFile(Path tsdFilePath, Executor cacheWriter) throws IOException, InvalidLineException {
+        try {
+            if (TSDBinaryCache.read(tsdFilePath, this::addInstance) >= 0)
+                return;
+        } catch (IOException | InvalidLineException e) { // a corrupt cache is replaced
+            clear();
+        }
+        BasicFileAttributes attributes = Files.readAttributes(tsdFilePath, BasicFileAttributes.class);
+        processFile(tsdFilePath);
+        Map<String, String> labels = dataLabels;
+        Map<String, Point2D> points = dataPoints;
+        cacheWriter.execute(() -> {
+            try {
+                TSDBinaryCache.write(tsdFilePath, attributes, labels, points);
+            } catch (IOException e) { System.err.println(e.getMessage()); }
         });
-        if (errorMessage.length() > 0)
-            throw new Exception(errorMessage.toString());
+    }
+
+    /**
+     * Processes the data from the contents of a <code>.tsd</code> file that were already read into memory, without
+     * decoding them into a {@link String} first.
+     *
+     * @param bytes the UTF-8 contents of the file, from index 0 up to the buffer's limit
+     * @throws InvalidLineException if the contents do not follow the <code>.tsd</code> data format, or repeat a name
+     */
+    public void processBytes(ByteBuffer bytes) throws InvalidLineException {
+        try {
+            MappedTSDReader.read(bytes, this::addInstance);
+        } catch (InvalidLineException e) {
+            hadAnError.set(true);
+            clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the data from a model of the text that is kept up to date as the text is edited, instead of parsing the
+     * text again. The processor uses the model's maps as they are, so it must be given a valid model.
+     *
+     * @param model a valid model of the text
+     * @see TSDTextModel#isValid()
+     */
+    public void processModel(TSDTextModel model) {
+        dataLabels = model.getLabels();
+        dataPoints = model.getPoints();
+        lineNumber.set(dataLabels.size() + 1);
+    }
+
+    private void addInstance(String name, String label, double x, double y) throws InvalidDataNameException, DuplicateNameException {
+        if (dataLabels.putIfAbsent(checkedname(name), dictionary.intern(label)) != null)
+            throw new DuplicateNameException(name);
+        dataPoints.put(name, new Point2D(x, y));
+        lineNumber.getAndIncrement();
     }
 
     /**
      * Exports the data to the specified 2-D chart.
+     * <p>
+     * The chart's style sheet only tells {@link #DEFAULT_PALETTE_SIZE} series apart, so beyond that many labels, e.g.,
+     * the clusters of a large clustering, each series is given its own color, and hues are spread around the color
+     * wheel by the golden angle so that neighboring series stand apart. The legend, which would then list hundreds of
+     * series in the default colors, is hidden.
      *
      * @param chart the specified chart
      */
 
     public void toChartData(XYChart<Number, Number> chart) {
-        Set<String> labels = new HashSet<>(dataLabels.values());
-        for (String label : labels) {
-            XYChart.Series<Number, Number> series = new XYChart.Series<>();
-            series.setName(label);
-            dataLabels.entrySet().stream().filter(entry -> entry.getValue().equals(label)).forEach(entry -> {
-                Point2D point = dataPoints.get(entry.getKey());
-                series.getData().add(new XYChart.Data<>(point.getX(), point.getY()));
-            });
-            chart.getData().add(series);
+        LabelDictionary labels = new LabelDictionary(); // the code of a label is the index of its series
+        List<XYChart.Series<Number, Number>> series = new ArrayList<>();
+        dataLabels.forEach((name, label) -> {
+            int code = labels.encode(label);
+            if (code == series.size()) {
+                series.add(new XYChart.Series<>());
+                series.get(code).setName(label);
+            }
+            Point2D point = dataPoints.get(name);
+            series.get(code).getData().add(new XYChart.Data<>(point.getX(), point.getY()));
+        });
+        addSeries(chart, series);
+    }
+
+    /**
+     * Exports the instances of a data set to the specified 2-D chart, in the same way as {@link #toChartData(XYChart)},
+     * reading the columns of the data set rather than going through its maps.
+     */
+    public static void toChartData(DataSet dataSet, XYChart<Number, Number> chart) {
+        LabelDictionary dictionary = dataSet.getLabelDictionary();
+        int[] seriesOf = new int[dictionary.size()]; // the index of the series of each label code, -1 if none yet
+        Arrays.fill(seriesOf, -1);
+        List<XYChart.Series<Number, Number>> series = new ArrayList<>();
+        for (int i = 0; i < dataSet.size(); i++) {
+            int code = dataSet.getLabelCode(i);
+            if (seriesOf[code] < 0) {
+                seriesOf[code] = series.size();
+                series.add(new XYChart.Series<>());
+                series.get(seriesOf[code]).setName(dictionary.decode(code));
+            }
+            series.get(seriesOf[code]).getData().add(new XYChart.Data<>(dataSet.getX(i), dataSet.getY(i)));
+        }
+        addSeries(chart, series);
+    }
+
+    private static void addSeries(XYChart<Number, Number> chart, List<XYChart.Series<Number, Number>> series) {
+        chart.getData().addAll(series);
+        boolean palette = series.size() > DEFAULT_PALETTE_SIZE;
+        chart.setLegendVisible(!palette);
+        if (palette) {
+            for (int i = 0; i < series.size(); i++) {
+                String style = String.format(Locale.ROOT, "-fx-background-color: hsb(%.1f, 75%%, 85%%), white;", (i * GOLDEN_ANGLE) % 360);
+                for (XYChart.Data<Number, Number> data : series.get(i).getData())
+                    if (data.getNode() != null)
+                        data.getNode().setStyle(style);
+            }
         }
     }
 
     void clear() {
-        dataPoints.clear();
-        dataLabels.clear();
+        dataPoints = new LinkedHashMap<>(); // the maps may be shared with a data set or a text model
+        dataLabels = new LinkedHashMap<>();
+        dictionary.clear();
         resetLineNumber();
     }
 
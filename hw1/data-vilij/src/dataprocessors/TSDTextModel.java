@@ -0,0 +1,289 @@
+package dataprocessors;
+
+import javafx.geometry.Point2D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the <code>.tsd</code> data typed into the text area parsed, one line at a time, as the text is edited. Each
+ * line holds its own parsed instance and an edit re-parses only the lines it touches, updating the name-to-label and
+ * name-to-location maps in place, so the cost of an edit depends on the size of the edit and not on the size of the
+ * text.
+ * <p>
+ * The lines are parsed as by {@link TSDProcessor#processString(String)}, and while the text is {@link #isValid() valid}
+ * the maps hold the same instances that it would produce, in the order of their lines, whatever order the lines were
+ * edited in. The model only tracks <em>whether</em> the text has errors: the first one is still found, and reported
+ * with its line number, by a full parse.
+ * <p>
+ * Text that is set as a whole, such as that of a loaded file, is not parsed as it is set: the model is
+ * {@link #detach() detached} from it, and parses it in full only once it is {@link #sync(CharSequence) needed}.
+ *
+ * @author The author of this document is Lily Zhong.
+ * @see TSDProcessor#processModel(TSDTextModel)
+ */
+public final class TSDTextModel {
+
+    private static final class Line {
+        int     length;  // without the line terminator
+        boolean blank;
+        String  name;    // null if the line is blank or invalid
+        String  label;
+        Point2D point;
+    }
+
+    private final TSDLineParser        parser = new TSDLineParser();
+    private final Map<String, Line>    owners = new HashMap<>(); // the line whose instance is in the maps
+    private final Map<String, Integer> counts = new HashMap<>(); // the number of lines with each name
+
+    private final List<Line> lines  = new ArrayList<>();
+    private int[]            starts = new int[16]; // the offset of each line in the text, see start(int)
+    private int              shiftFrom;            // the starts from this line on are still to be shifted ...
+    private int              shift;                // ... by this much
+    private int              length;
+    private int              blank;
+    private int              invalid;
+    private int              duplicates;           // lines whose name is used by another line as well
+    private boolean          detached;             // whether the model does not hold the text
+    private Map<String, String>  labels;           // the instances in line order, made when first asked for
+    private Map<String, Point2D> points;
+
+    public TSDTextModel() { reset(""); }
+
+    /** Discards the model and parses the specified text in full. */
+    public void reset(CharSequence text) {
+        detached = false;
+        lines.clear();
+        labels = null;
+        points = null;
+        owners.clear();
+        counts.clear();
+        blank = invalid = duplicates = 0;
+        lines.addAll(parseLines(text));
+        if (starts.length < lines.size())
+            starts = new int[lines.size()];
+        int position = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            starts[i] = position;
+            position += lines.get(i).length + 1;
+        }
+        shiftFrom = lines.size();
+        shift = 0;
+        length = text.length();
+    }
+
+    /**
+     * Applies an edit of the text, replacing the characters from <code>start</code> (inclusive) to <code>end</code>
+     * (exclusive) with <code>inserted</code>. Only the lines that the edit touches are parsed again.
+     * <p>
+     * The offsets of the lines after the edit are not updated one by one: they are shifted lazily, as a whole, so
+     * consecutive edits close to each other only update the offsets in between.
+     *
+     * @param oldText  the text before the edit, which this model holds
+     * @param start    the start of the replaced range in <code>oldText</code>
+     * @param end      the end of the replaced range in <code>oldText</code>
+     * @param inserted the replacement
+     */
+    public void replace(CharSequence oldText, int start, int end, CharSequence inserted) {
+        if (detached || oldText.length() != length) {
+            reset(new StringBuilder(oldText).replace(start, end, inserted.toString()));
+            return;
+        }
+        int first = lineOf(start);
+        int last  = lineOf(end);
+        int from  = start(first);
+        int to    = last + 1 < lines.size() ? start(last + 1) - 1 : length;
+        StringBuilder region = new StringBuilder(start - from + inserted.length() + to - end)
+                .append(oldText, from, start)
+                .append(inserted)
+                .append(oldText, end, to);
+
+        for (int i = first; i <= last; i++)
+            unindex(lines.get(i));
+        List<Line> added   = parseLines(region);
+        int        removed = last - first + 1;
+        int        common  = Math.min(removed, added.size());
+        for (int i = 0; i < common; i++)
+            lines.set(first + i, added.get(i));
+
+        moveShiftTo(last + 1);
+        int size = lines.size();
+        if (added.size() > common)
+            lines.addAll(first + common, added.subList(common, added.size()));
+        else if (removed > common)
+            lines.subList(first + common, last + 1).clear();
+        if (added.size() != removed) {
+            int[] moved = starts.length >= lines.size() ? starts : Arrays.copyOf(starts, Math.max(lines.size(), starts.length * 2));
+            System.arraycopy(starts, last + 1, moved, first + added.size(), size - last - 1);
+            starts = moved;
+        }
+        int position = from;
+        for (int i = 0; i < added.size(); i++) {
+            starts[first + i] = position;
+            position += added.get(i).length + 1;
+        }
+        shiftFrom = first + added.size();
+        shift += inserted.length() - (end - start);
+        length += inserted.length() - (end - start);
+    }
+
+    /**
+     * Marks the model as no longer holding the text, as when the text is set as a whole. The model is parsed again from
+     * the text by the next {@link #sync(CharSequence) sync} or edit.
+     */
+    public void detach() { detached = true; }
+
+    /** Parses the specified text in full if the model is {@link #detach() detached} from it. */
+    public void sync(CharSequence text) {
+        if (detached)
+            reset(text);
+    }
+
+    /**
+     * @return whether the text follows the <code>.tsd</code> data format and has no repeated names, i.e., whether
+     * {@link TSDProcessor#processString(String)} would accept it; never while the model is {@link #detach() detached}
+     */
+    public boolean isValid() {
+        if (detached || invalid > 0 || duplicates > 0)
+            return false;
+        int trailing = 0; // blank lines at the end of the text are ignored
+        for (int i = lines.size() - 1; i >= 0 && lines.get(i).blank; i--)
+            trailing++;
+        return trailing == blank;
+    }
+
+    /** @return the length of the text this model holds */
+    public int length() { return length; }
+
+    /** @return the name-to-label map of the instances, in the order of their lines, which later edits leave as is */
+    public Map<String, String> getLabels() {
+        order();
+        return labels;
+    }
+
+    /** @return the name-to-location map of the instances, in the order of their lines, which later edits leave as is */
+    public Map<String, Point2D> getPoints() {
+        order();
+        return points;
+    }
+
+    /** Makes the maps of the instances, in line order, unless they are up to date. */
+    private void order() {
+        if (labels != null)
+            return;
+        labels = new LinkedHashMap<>();
+        points = new LinkedHashMap<>();
+        for (Line line : lines) {
+            if (line.name != null && owners.get(line.name) == line) {
+                labels.put(line.name, line.label);
+                points.put(line.name, line.point);
+            }
+        }
+    }
+
+    private int start(int line) { return line < shiftFrom ? starts[line] : starts[line] + shift; }
+
+    /** Applies the pending shift to the starts before <code>line</code>, or takes it back from those after it. */
+    private void moveShiftTo(int line) {
+        for (int i = shiftFrom; i < line; i++)
+            starts[i] += shift;
+        for (int i = line; i < shiftFrom; i++)
+            starts[i] -= shift;
+        shiftFrom = line;
+    }
+
+    private int lineOf(int offset) {
+        int low  = 0;
+        int high = lines.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (start(mid) <= offset)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    private List<Line> parseLines(CharSequence text) {
+        List<Line> parsed = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int lineEnd = position;
+            while (lineEnd < text.length() && text.charAt(lineEnd) != '\n')
+                lineEnd++;
+            parsed.add(parseLine(text, position, lineEnd));
+            if (lineEnd == text.length())
+                return parsed;
+            position = lineEnd + 1;
+        }
+    }
+
+    private Line parseLine(CharSequence text, int from, int to) {
+        Line line = new Line();
+        line.length = to - from;
+        if (from == to) {
+            line.blank = true;
+            blank++;
+            return line;
+        }
+        try {
+            parser.parse(text, from, to);
+            if (parser.name().startsWith("@")) {
+                line.name = parser.name();
+                line.label = parser.label();
+                line.point = new Point2D(parser.x(), parser.y());
+            }
+        } catch (IllegalArgumentException e) { /* counted as invalid below */ }
+        if (line.name == null)
+            invalid++;
+        else
+            index(line);
+        return line;
+    }
+
+    private void index(Line line) {
+        if (counts.merge(line.name, 1, Integer::sum) > 1) {
+            duplicates++;
+            return;
+        }
+        owners.put(line.name, line);
+        labels = null;
+        points = null;
+    }
+
+    /** Removes the line's instance from the maps, along with the line's name, as the line is being replaced. */
+    private void unindex(Line line) {
+        if (line.blank) {
+            blank--;
+            return;
+        }
+        if (line.name == null) {
+            invalid--;
+            return;
+        }
+        String name = line.name;
+        line.name = null;
+        labels = null;
+        points = null;
+        int count = counts.merge(name, -1, Integer::sum);
+        if (count == 0) {
+            counts.remove(name);
+            owners.remove(name);
+            return;
+        }
+        duplicates--;
+        if (owners.get(name) == line) { // another line with the same name takes its place in the maps
+            for (Line other : lines) {
+                if (name.equals(other.name)) {
+                    owners.put(name, other);
+                    return;
+                }
+            }
+        }
+    }
+}
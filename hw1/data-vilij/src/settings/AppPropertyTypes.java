@@ -58,6 +58,8 @@ public enum AppPropertyTypes {
     DONE,
     TSD_FULL_NAME,
     TSD_EXT,
+    TSD_GZ_EXT,
+    TSD_DEFLATE_EXT,
     NULL,
     CONFIG_WINDOW_TITLE,
     CONFIG_ERROR_TITLE,
@@ -85,5 +87,53 @@ public enum AppPropertyTypes {
     ALGORITHMS_REL_PATH,
     CLASSIFIER,
     CLUSTERER,
-    K_MEANS_CLUSTERING
+    K_MEANS_CLUSTERING,
+    MAX_DISPLAY_BYTES,
+    OVER_TEN_LINES,
+    LOAD_WARNING_TITLE,
+    TOLERANCE,
+    TOLERANCE_PROMPT_TEXT,
+    DEFAULT_TOLERANCE,
+    CONVERGED_TITLE,
+    CONVERGED_MSG,
+    ACCELERATED,
+    MINIBATCHKMEANSCLUSTERER,
+    MINI_BATCH_K_MEANS_CLUSTERING,
+    BATCH_SIZE,
+    BATCH_SIZE_PROMPT_TEXT,
+    LINEARCLASSIFIER,
+    LINEAR_CLASSIFICATION,
+    LINEAR_CLASSIFIER_LINE,
+    LINEAR_CLASSIFIER_LABELS,
+    RUN_ERROR_TITLE,
+    SEED,
+    SEED_PROMPT_TEXT,
+    LAST_SEED_PROMPT_TEXT,
+    FULL_SPEED,
+    COMPARE_RUNS,
+    MULTI_RUN_TITLE,
+    STOP,
+    RUN_PROGRESS,
+    RUN_CONVERGED,
+    RUN_FINISHED,
+    RUN_STOPPED,
+    RUN_TITLE,
+    SWEEP,
+    SWEEP_TITLE,
+    SWEEP_K_FROM,
+    SWEEP_K_TO,
+    SWEEP_SEEDS,
+    SWEEP_ERROR_MESSAGE,
+    SWEEP_CONFIG_MISSING,
+    SWEEP_RESULT,
+    SWEEP_RUN_FAILED,
+    SWEEP_ALL_FAILED,
+    SWEEP_ALL_RUNS,
+    SWEEP_BEST_RUNS,
+    SWEEP_INERTIA,
+    SWEEP_PROGRESS,
+    SWEEP_ELBOW,
+    SWEEP_SHOW,
+    PAUSE,
+    RESUME
 }
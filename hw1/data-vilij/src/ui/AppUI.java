@@ -3,6 +3,7 @@ package ui;
 import algorithms.*;
 import actions.AppActions;
 import dataprocessors.AppData;
+import dataprocessors.TSDTextModel;
 import dialogs.ExitWhileUnfinishedDialog;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleBooleanProperty;
@@ -48,6 +49,8 @@ public final class AppUI extends UITemplate {
     ApplicationTemplate applicationTemplate;
     ConfigurationWindow classificationWindow;
     ConfigurationWindow clusteringWindow;
+    MultiRunWindow multiRunWindow;
+    SweepWindow sweepWindow;
     ExitWhileUnfinishedDialog exitWhileUnfinishedDialog = ExitWhileUnfinishedDialog.getDialog();
 
     @SuppressWarnings("FieldCanBeLocal")
@@ -55,6 +58,7 @@ public final class AppUI extends UITemplate {
     private LineChart<Number, Number> chart;          // the chart where data will be displayed
     private TextArea textArea;       // text area for new data input
     private boolean hasNewText;     // whether or not the text area has any new data since last display
+    private boolean textFiltered;   // whether the last change of the text went through the text formatter
 
     private Text statsText = new Text();
     private ComboBox<String> algorithmSel = new ComboBox<>();
@@ -63,7 +67,12 @@ public final class AppUI extends UITemplate {
     private RadioButton classificationAlg = new RadioButton();
     private RadioButton clusteringAlg = new RadioButton();
     private RadioButton kmeansAlg = new RadioButton();
+    private RadioButton miniBatchAlg = new RadioButton();
+    private RadioButton linearAlg = new RadioButton();
     private Button runButton = new Button();
+    private Button pauseButton = new Button(); // pauses and resumes the run in progress
+    private Button compareButton = new Button(); // opens the multi-run workspace
+    private Button sweepButton = new Button();   // opens the K Means sweep
     boolean selectedClusteringAlg = false;
     boolean selectedClassificationAlg = false;
 
@@ -74,6 +83,8 @@ public final class AppUI extends UITemplate {
         this.applicationTemplate = applicationTemplate;
         classificationWindow = new ConfigurationWindow(applicationTemplate);
         clusteringWindow = new ConfigurationWindow(applicationTemplate);
+        multiRunWindow = new MultiRunWindow(applicationTemplate);
+        sweepWindow = new SweepWindow(applicationTemplate);
     }
 
     @Override
@@ -148,10 +159,16 @@ public final class AppUI extends UITemplate {
                 vbox.getChildren().get(1).setVisible(false);
                 vbox.getChildren().get(2).setVisible(false);
                 vbox.getChildren().get(2).setManaged(false);
+                vbox.getChildren().get(3).setVisible(false);
+                vbox.getChildren().get(3).setManaged(false);
+                vbox.getChildren().get(4).setVisible(false);
+                vbox.getChildren().get(4).setManaged(false);
                 hideRunButton();
                 classificationAlg.setSelected(false);
                 clusteringAlg.setSelected(false);
                 kmeansAlg.setSelected(false);
+                miniBatchAlg.setSelected(false);
+                linearAlg.setSelected(false);
                 selectedClusteringAlg = false;
                 selectedClassificationAlg = false;
                 hideAlgorithmTypes();
@@ -186,11 +203,16 @@ public final class AppUI extends UITemplate {
         if (algorithmSel.getSelectionModel().getSelectedItem() != null)
             algorithmSel.getSelectionModel().clearSelection();
         hideRunButton();
+        hidePauseButton();
         classificationAlg.setSelected(false);
         clusteringAlg.setSelected(false);
         kmeansAlg.setSelected(false);
+        miniBatchAlg.setSelected(false);
+        linearAlg.setSelected(false);
         selectedClusteringAlg = false;
         selectedClassificationAlg = false;
+        multiRunWindow.close();
+        sweepWindow.close();
     }
 
     public void hideRunButton() {
@@ -203,6 +225,48 @@ public final class AppUI extends UITemplate {
         runButton.setManaged(true);
     }
 
+    /** Shows the button that pauses the run in progress. */
+    public void showPauseButton() {
+        pauseButton.setText(applicationTemplate.manager.getPropertyValue(PAUSE.name()));
+        pauseButton.setDisable(false);
+        pauseButton.setVisible(true);
+        pauseButton.setManaged(true);
+    }
+
+    /** Shows the button that resumes the run, once it has paused within a step. */
+    public void showResumeButton() {
+        showPauseButton();
+        pauseButton.setText(applicationTemplate.manager.getPropertyValue(RESUME.name()));
+    }
+
+    public void hidePauseButton() {
+        pauseButton.setVisible(false);
+        pauseButton.setManaged(false);
+    }
+
+    public Button getPauseButton() { return pauseButton; }
+
+    /** Enables or disables the configuration buttons of the algorithms, which are disabled while a run goes on. */
+    public void setConfigButtonsDisabled(boolean disabled) {
+        vbox.getChildren().forEach(row -> ((HBox) row).getChildren().get(1).setDisable(disabled));
+    }
+
+    /** Shows the algorithm types again once a run has ended, with no algorithm selected, for the next run. */
+    public void resetAlgorithmSelection() {
+        algorithmSel.getSelectionModel().clearSelection();
+        algorithmSel.setManaged(true);
+        algorithmSel.setVisible(true);
+        classificationAlg.setSelected(false);
+        clusteringAlg.setSelected(false);
+        kmeansAlg.setSelected(false);
+        miniBatchAlg.setSelected(false);
+        linearAlg.setSelected(false);
+        setConfigButtonsDisabled(false);
+        hideAlgorithmLists();
+        hideRunButton();
+        hidePauseButton();
+    }
+
     private void layout() {
         PropertyManager manager = applicationTemplate.manager;
         NumberAxis      xAxis   = new NumberAxis();
@@ -259,6 +323,12 @@ public final class AppUI extends UITemplate {
         hbox = new HBox();
         hbox.getChildren().addAll(kmeansAlg, new Button(manager.getPropertyValue(CONFIGURATION.name())));
         vbox.getChildren().add(hbox);
+        hbox = new HBox();
+        hbox.getChildren().addAll(miniBatchAlg, new Button(manager.getPropertyValue(CONFIGURATION.name())));
+        vbox.getChildren().add(hbox);
+        hbox = new HBox();
+        hbox.getChildren().addAll(linearAlg, new Button(manager.getPropertyValue(CONFIGURATION.name())));
+        vbox.getChildren().add(hbox);
         leftPanel.getChildren().add(vbox);
 
         runButton.setText(manager.getPropertyValue(RUN.name()));
@@ -267,6 +337,19 @@ public final class AppUI extends UITemplate {
         runButton.setVisible(false);
         runButton.setManaged(false);
 
+        leftPanel.getChildren().add(pauseButton);
+        hidePauseButton();
+
+        compareButton.setText(manager.getPropertyValue(COMPARE_RUNS.name()));
+        leftPanel.getChildren().add(compareButton);
+        compareButton.setVisible(false);
+        compareButton.setManaged(false);
+
+        sweepButton.setText(manager.getPropertyValue(SWEEP.name()));
+        leftPanel.getChildren().add(sweepButton);
+        sweepButton.setVisible(false);
+        sweepButton.setManaged(false);
+
         StackPane rightPanel = new StackPane(chart);
         rightPanel.setMaxSize(windowWidth * 0.69, windowHeight * 0.69);
         rightPanel.setMinSize(windowWidth * 0.69, windowHeight * 0.69);
@@ -290,12 +373,15 @@ public final class AppUI extends UITemplate {
         setToggleHandler();
         configButtonHandler();
         setRunHandler();
+        compareButton.setOnAction(event -> multiRunWindow.init());
+        sweepButton.setOnAction(event -> sweepWindow.init());
         handleXButton();
     }
 
     public void setRunHandler() {
         AppData dataComponent = ((AppData) applicationTemplate.getDataComponent());
         runButton.setOnAction(event -> dataComponent.setRunButtonAction());
+        pauseButton.setOnAction(event -> dataComponent.setPauseButtonAction());
     }
 
     private void algorithmListInit() {
@@ -303,9 +389,13 @@ public final class AppUI extends UITemplate {
         classificationAlg.setText(applicationTemplate.manager.getPropertyValue(RANDOM_CLASSIFICATION.name()));
         clusteringAlg.setText(applicationTemplate.manager.getPropertyValue(RANDOM_CLUSTERING.name()));
         kmeansAlg.setText(applicationTemplate.manager.getPropertyValue(K_MEANS_CLUSTERING.name()));
+        miniBatchAlg.setText(applicationTemplate.manager.getPropertyValue(MINI_BATCH_K_MEANS_CLUSTERING.name()));
+        linearAlg.setText(applicationTemplate.manager.getPropertyValue(LINEAR_CLASSIFICATION.name()));
         classificationAlg.setToggleGroup(group);
         clusteringAlg.setToggleGroup(group);
         kmeansAlg.setToggleGroup(group);
+        miniBatchAlg.setToggleGroup(group);
+        linearAlg.setToggleGroup(group);
         hideAlgorithmLists();
     }
 
@@ -328,7 +418,19 @@ public final class AppUI extends UITemplate {
     }
 
     private void setTextAreaActions() {
+        TSDTextModel textModel = ((AppData) applicationTemplate.getDataComponent()).getTextModel();
+        // every edit re-parses only the lines it touches
+        textArea.setTextFormatter(new TextFormatter<>(change -> {
+            textModel.replace(change.getControlText(), change.getRangeStart(), change.getRangeEnd(), change.getText());
+            // a change that leaves the text as it is fires no change of the text, which would clear the flag
+            textFiltered = !leavesText(change);
+            return change;
+        }));
         textArea.textProperty().addListener((observable, oldValue, newValue) -> {
+            // text set without the formatter, such as a loaded file, is only parsed once it is needed
+            if (!textFiltered || textModel.length() != newValue.length())
+                textModel.detach();
+            textFiltered = false;
             try {
                 if (!newValue.equals(oldValue)) { // if text is changed
                     ((AppActions) applicationTemplate.getActionComponent()).setIsUnsavedProperty(true);
@@ -347,6 +449,13 @@ public final class AppUI extends UITemplate {
         });
     }
 
+    /** @return whether the change replaces a range of the text with the same characters */
+    private static boolean leavesText(TextFormatter.Change change) {
+        int start = change.getRangeStart();
+        int length = change.getRangeEnd() - start;
+        return change.getText().length() == length && change.getControlText().regionMatches(start, change.getText(), 0, length);
+    }
+
     public void setTooltips() {
         Map<String, Point2D> dataPoints = ((AppData) applicationTemplate.getDataComponent()).getDataPoints();
         for (XYChart.Series<Number, Number> series : chart.getData()) {
@@ -374,6 +483,10 @@ public final class AppUI extends UITemplate {
     public void hideStats() {
         statsText.setVisible(false);
         statsText.setManaged(false);
+        compareButton.setVisible(false);
+        compareButton.setManaged(false);
+        sweepButton.setVisible(false);
+        sweepButton.setManaged(false);
     }
 
     public void hideAlgorithmTypes() {
@@ -394,6 +507,10 @@ public final class AppUI extends UITemplate {
     public void showStatsAndAlgorithm() {
         statsText.setVisible(true);
         statsText.setManaged(true);
+        compareButton.setVisible(true);
+        compareButton.setManaged(true);
+        sweepButton.setVisible(true);
+        sweepButton.setManaged(true);
         algorithmSel.setVisible(true);
         algorithmSel.setManaged(true);
     }
@@ -439,6 +556,10 @@ public final class AppUI extends UITemplate {
                     vbox.getChildren().get(1).setManaged(false);
                     vbox.getChildren().get(2).setVisible(false);
                     vbox.getChildren().get(2).setVisible(false);
+                    vbox.getChildren().get(3).setVisible(false);
+                    vbox.getChildren().get(3).setManaged(false);
+                    vbox.getChildren().get(4).setVisible(true);
+                    vbox.getChildren().get(4).setManaged(true);
                     selectedClassificationAlg = true;
                 }
                 if (algorithmSel.getSelectionModel().getSelectedItem().equalsIgnoreCase(applicationTemplate.manager.getPropertyValue(CLUSTERING.name()))) {
@@ -448,6 +569,10 @@ public final class AppUI extends UITemplate {
                     vbox.getChildren().get(1).setManaged(true);
                     vbox.getChildren().get(2).setManaged(true);
                     vbox.getChildren().get(2).setVisible(true);
+                    vbox.getChildren().get(3).setManaged(true);
+                    vbox.getChildren().get(3).setVisible(true);
+                    vbox.getChildren().get(4).setVisible(false);
+                    vbox.getChildren().get(4).setManaged(false);
                     selectedClusteringAlg = true;
                 }
             }
@@ -483,17 +608,41 @@ public final class AppUI extends UITemplate {
                     runButton.setDisable(false);
             }
         });
+        miniBatchAlg.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (miniBatchAlg.isSelected()) {
+                showRunButton();
+                if (!clusteringWindow.hasGivenConfigClustering())
+                    runButton.setDisable(true);
+                else
+                    runButton.setDisable(false);
+            }
+        });
+        linearAlg.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (linearAlg.isSelected()) {
+                showRunButton();
+                if (!classificationWindow.hasGivenConfigClassification())
+                    runButton.setDisable(true);
+                else
+                    runButton.setDisable(false);
+            }
+        });
     }
 
     public void configButtonHandler() {
         ((Button) ((HBox) vbox.getChildren().get(0)).getChildren().get(1)).setOnAction(event -> {
-            classificationWindow.init();
+            classificationWindow.init(RandomClassifier.class);
         });
         ((Button) ((HBox) vbox.getChildren().get(1)).getChildren().get(1)).setOnAction(event -> {
-            clusteringWindow.init();
+            clusteringWindow.init(RandomClusterer.class);
         });
         ((Button) ((HBox) vbox.getChildren().get(2)).getChildren().get(1)).setOnAction(event -> {
-            clusteringWindow.init();
+            clusteringWindow.init(KMeansClusterer.class);
+        });
+        ((Button) ((HBox) vbox.getChildren().get(3)).getChildren().get(1)).setOnAction(event -> {
+            clusteringWindow.init(MiniBatchKMeansClusterer.class);
+        });
+        ((Button) ((HBox) vbox.getChildren().get(4)).getChildren().get(1)).setOnAction(event -> {
+            classificationWindow.init(LinearClassifier.class);
         });
     }
 
@@ -518,6 +667,8 @@ public final class AppUI extends UITemplate {
     public void setSelectedClassificationAlg(boolean b) { this.selectedClassificationAlg = b; }
 
     private void handleXButton() {
-        primaryStage.setOnCloseRequest(event -> System.exit(0));
+        primaryStage.setOnCloseRequest(event -> {
+            AlgorithmExecutor.getExecutor().exit();
+        });
     }
 }
@@ -1,5 +1,10 @@
 package ui;
 
+import algorithms.Algorithm;
+import algorithms.Clusterer;
+import algorithms.KMeansClusterer;
+import algorithms.LinearClassifier;
+import algorithms.MiniBatchKMeansClusterer;
 import dataprocessors.AppData;
 import javafx.event.Event;
 import javafx.geometry.Pos;
@@ -18,6 +23,8 @@ import vilij.templates.ApplicationTemplate;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
 
 import static settings.AppPropertyTypes.*;
 
@@ -32,22 +39,29 @@ public class ConfigurationWindow extends Stage {
     private TextField iterField = new TextField();
     private TextField intervalField = new TextField();
     private TextField numClustersField = new TextField();
+    private TextField toleranceField = new TextField();
+    private TextField batchSizeField = new TextField();
+    private TextField seedField = new TextField();
     private CheckBox checkBox = new CheckBox();
+    private CheckBox acceleratedBox = new CheckBox();
+    private CheckBox fullSpeedBox = new CheckBox();
     private List<Object> classificationPref = new ArrayList<>();
     private List<Object> clusteringPref = new ArrayList<>();
     private boolean hasGivenConfigClassification = false;
     private boolean hasGivenConfigClustering = false;
+    private Long lastSeed; // the seed of the last run, shown in the empty seed field
 
     public ConfigurationWindow(ApplicationTemplate applicationTemplate) {
         this.applicationTemplate = applicationTemplate;
     }
 
-    public void init() {
-        layout();
+    /** Shows the window with the fields of the specified algorithm; the other fields are hidden, and left as they are. */
+    public void init(Class<? extends Algorithm> algorithm) {
+        layout(algorithm);
         setWorkspaceActions();
     }
 
-    private void layout() {
+    private void layout(Class<? extends Algorithm> algorithm) {
         PropertyManager manager = applicationTemplate.manager;
         window.setTitle(manager.getPropertyValue(CONFIG_WINDOW_TITLE.name()));
 
@@ -72,19 +86,46 @@ public class ConfigurationWindow extends Stage {
         hBox.setMaxWidth(300);
         vBox.getChildren().add(hBox);
 
-        if ((((AppUI) applicationTemplate.getUIComponent()).isSelectedClusteringAlg())) {
-            ((HBox) vBox.getChildren().get(2)).setManaged(true);
-            ((HBox) vBox.getChildren().get(2)).setVisible(true);
-        } else {
-            ((HBox) vBox.getChildren().get(2)).setManaged(false);
-            ((HBox) vBox.getChildren().get(2)).setVisible(false);
-        }
+        toleranceField.setPromptText(manager.getPropertyValue(TOLERANCE_PROMPT_TEXT.name()));
+        hBox = new HBox(10);
+        hBox.getChildren().addAll(new Label(manager.getPropertyValue(TOLERANCE.name())), toleranceField);
+        hBox.setMaxWidth(300);
+        vBox.getChildren().add(hBox);
+
+        hBox = new HBox(10);
+        hBox.getChildren().addAll(new Label(manager.getPropertyValue(ACCELERATED.name())), acceleratedBox);
+        hBox.setMaxWidth(300);
+        vBox.getChildren().add(hBox);
+
+        batchSizeField.setPromptText(manager.getPropertyValue(BATCH_SIZE_PROMPT_TEXT.name()));
+        hBox = new HBox(10);
+        hBox.getChildren().addAll(new Label(manager.getPropertyValue(BATCH_SIZE.name())), batchSizeField);
+        hBox.setMaxWidth(300);
+        vBox.getChildren().add(hBox);
+
+        boolean kMeans = algorithm == KMeansClusterer.class || algorithm == MiniBatchKMeansClusterer.class;
+        showField(vBox, 2, Clusterer.class.isAssignableFrom(algorithm));      // the number of clusters
+        showField(vBox, 3, kMeans);                                           // the tolerance
+        showField(vBox, 4, algorithm == KMeansClusterer.class);               // the accelerated mode
+        showField(vBox, 5, algorithm == MiniBatchKMeansClusterer.class || algorithm == LinearClassifier.class); // the batch size
+
+        seedField.setPromptText(lastSeed == null ? manager.getPropertyValue(SEED_PROMPT_TEXT.name())
+                                                 : String.format(manager.getPropertyValue(LAST_SEED_PROMPT_TEXT.name()), lastSeed));
+        hBox = new HBox(10);
+        hBox.getChildren().addAll(new Label(manager.getPropertyValue(SEED.name())), seedField);
+        hBox.setMaxWidth(300);
+        vBox.getChildren().add(hBox);
 
         hBox = new HBox(10);
         hBox.getChildren().addAll(new Label(manager.getPropertyValue(CONTINUOUS_RUN.name())), checkBox);
         hBox.setMaxWidth(300);
         vBox.getChildren().add(hBox);
 
+        hBox = new HBox(10);
+        hBox.getChildren().addAll(new Label(manager.getPropertyValue(FULL_SPEED.name())), fullSpeedBox);
+        hBox.setMaxWidth(300);
+        vBox.getChildren().add(hBox);
+
         OKButton.setText(manager.getPropertyValue(APPLY.name()));
         vBox.getChildren().add(OKButton);
 
@@ -92,10 +133,15 @@ public class ConfigurationWindow extends Stage {
         vBox.setAlignment(Pos.CENTER);
         pane.setCenter(vBox);
 
-        window.setScene(new Scene(pane, 350, 250));
+        window.setScene(new Scene(pane, 350, 430));
         window.show();
     }
 
+    private static void showField(VBox vBox, int row, boolean shown) {
+        vBox.getChildren().get(row).setManaged(shown);
+        vBox.getChildren().get(row).setVisible(shown);
+    }
+
     private void setWorkspaceActions() {
         setOKButtonActions();
         setXActions();
@@ -104,17 +150,21 @@ public class ConfigurationWindow extends Stage {
     private void setOKButtonActions() {
         AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
         OKButton.setOnAction(event -> {
+            ((AppData) applicationTemplate.getDataComponent()).endSteppedRun(); // a new configuration starts a new run
             // case for CLASSIFICATION
             boolean validForClassification =
                     iterField.getText().matches("\\d+") &&
                             Integer.parseInt(iterField.getText()) > 0 &&
                             intervalField.getText().matches("\\d+") &&
-                            Integer.parseInt(intervalField.getText()) > 0;
+                            Integer.parseInt(intervalField.getText()) > 0 &&
+                            isValidSeed() &&
+                            batchSizeField.getText().trim().matches("\\d*");
             // case for CLUSTERING
             boolean validForClustering =
                     validForClassification &&
                             numClustersField.getText().matches("\\d+") &&
-                            Integer.parseInt(numClustersField.getText()) > 0;
+                            Integer.parseInt(numClustersField.getText()) > 0 &&
+                            isValidTolerance();
 
             if (validForClustering && uiComponent.isSelectedClusteringAlg() && getUpdateInterval() <= getMaxIter()) {
                 // load the same settings from clusteringPref
@@ -122,11 +172,21 @@ public class ConfigurationWindow extends Stage {
                 clusteringPref.add(intervalField.getText());
                 clusteringPref.add(numClustersField.getText());
                 clusteringPref.add(checkBox.isSelected());
+                clusteringPref.add(toleranceField.getText());
+                clusteringPref.add(acceleratedBox.isSelected());
+                clusteringPref.add(batchSizeField.getText());
+                clusteringPref.add(seedField.getText());
+                clusteringPref.add(fullSpeedBox.isSelected());
                 if (!clusteringPref.isEmpty()) {
                     iterField.setText((String) clusteringPref.get(0));
                     intervalField.setText((String) clusteringPref.get(1));
                     numClustersField.setText((String) clusteringPref.get(2));
                     checkBox.setSelected((boolean) clusteringPref.get(3));
+                    toleranceField.setText((String) clusteringPref.get(4));
+                    acceleratedBox.setSelected((boolean) clusteringPref.get(5));
+                    batchSizeField.setText((String) clusteringPref.get(6));
+                    seedField.setText((String) clusteringPref.get(7));
+                    fullSpeedBox.setSelected((boolean) clusteringPref.get(8));
                     clusteringPref.clear();
                 }
                 uiComponent.getRunButton().setDisable(false);
@@ -136,10 +196,16 @@ public class ConfigurationWindow extends Stage {
                 classificationPref.add(iterField.getText());
                 classificationPref.add(intervalField.getText());
                 classificationPref.add(checkBox.isSelected());
+                classificationPref.add(seedField.getText());
+                classificationPref.add(fullSpeedBox.isSelected());
+                classificationPref.add(batchSizeField.getText());
                 if (!classificationPref.isEmpty()) {
                     iterField.setText((String) classificationPref.get(0));
                     intervalField.setText((String) classificationPref.get(1));
                     checkBox.setSelected((boolean) classificationPref.get(2));
+                    seedField.setText((String) classificationPref.get(3));
+                    fullSpeedBox.setSelected((boolean) classificationPref.get(4));
+                    batchSizeField.setText((String) classificationPref.get(5));
                     classificationPref.clear();
                 }
                 uiComponent.getRunButton().setDisable(false);
@@ -156,12 +222,20 @@ public class ConfigurationWindow extends Stage {
                     intervalField.setText(defaultValue);
                     iterField.setText(defaultValue);
                     checkBox.setSelected(false);
+                    seedField.setText("");
+                    fullSpeedBox.setSelected(false);
+                    batchSizeField.setText("");
                 } else if (uiComponent.isSelectedClusteringAlg()) {
                     hasGivenConfigClustering = true;
                     intervalField.setText(defaultValue);
                     iterField.setText(defaultValue);
                     checkBox.setSelected(false);
                     numClustersField.setText(defaultValue);
+                    toleranceField.setText(applicationTemplate.manager.getPropertyValue(DEFAULT_TOLERANCE.name()));
+                    acceleratedBox.setSelected(false);
+                    batchSizeField.setText("");
+                    seedField.setText("");
+                    fullSpeedBox.setSelected(false);
                 }
             }
             uiComponent.getRunButton().setDisable(false);
@@ -195,7 +269,76 @@ public class ConfigurationWindow extends Stage {
         return checkBox.isSelected();
     }
 
+    public boolean isFullSpeed() {
+        return fullSpeedBox.isSelected();
+    }
+
+    public boolean isAccelerated() {
+        return acceleratedBox.isSelected();
+    }
+
+    // an empty batch size field means the algorithm's own default batch size
+    public OptionalInt getBatchSize() {
+        String text = batchSizeField.getText().trim();
+        try {
+            return text.isEmpty() ? OptionalInt.empty() : OptionalInt.of(Math.max(1, Integer.parseInt(text)));
+        } catch (NumberFormatException e) {
+            return OptionalInt.empty();
+        }
+    }
+
+    // an empty seed field means a seed picked at random
+    private boolean isValidSeed() {
+        String text = seedField.getText().trim();
+        try {
+            if (!text.isEmpty())
+                Long.parseLong(text);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public OptionalLong getSeed() {
+        String text = seedField.getText().trim();
+        if (text.isEmpty() || !isValidSeed())
+            return OptionalLong.empty();
+        return OptionalLong.of(Long.parseLong(text));
+    }
+
+    /** Configures the number of clusters and the seed of a model picked in a sweep, so that the next run repeats it. */
+    public void setClustering(int numClusters, long seed) {
+        numClustersField.setText(String.valueOf(numClusters));
+        seedField.setText(String.valueOf(seed));
+    }
+
+    /**
+     * Shows the seed of the last run in the seed field while it is empty, without setting it, so that the next run still
+     * picks a seed at random unless the seed is typed in.
+     */
+    public void showLastSeed(long seed) {
+        lastSeed = seed;
+        seedField.setPromptText(String.format(applicationTemplate.manager.getPropertyValue(LAST_SEED_PROMPT_TEXT.name()), seed));
+    }
+
     public int getNumClusters() throws NumberFormatException {
         return Integer.parseInt(numClustersField.getText());
     }
+
+    // an empty tolerance field means the default tolerance
+    private boolean isValidTolerance() {
+        String text = toleranceField.getText().trim();
+        try {
+            return text.isEmpty() || Double.parseDouble(text) >= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public double getTolerance() {
+        String text = toleranceField.getText().trim();
+        if (text.isEmpty() || !isValidTolerance())
+            text = applicationTemplate.manager.getPropertyValue(DEFAULT_TOLERANCE.name());
+        return Double.parseDouble(text);
+    }
 }
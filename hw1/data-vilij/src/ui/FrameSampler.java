@@ -0,0 +1,90 @@
+package ui;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shows the progress of an algorithm that runs at full speed, without waiting for the chart. The algorithm's thread
+ * publishes frames, which render its state as it was when they were made, and the UI thread shows the latest of them on
+ * a display refresh, at most once per interval. A frame that is replaced before it is shown is never rendered.
+ * <p>
+ * The interval adapts to what a frame costs: from the start of a rendering until the UI thread gets to the next
+ * refresh, which also counts the layout and drawing of the chart, less the one refresh it waits for anyway. The UI
+ * thread spends at most a {@link #RENDER_SHARE share} of its time rendering, so that it stays responsive however large
+ * the chart gets, and cheap frames are shown on every refresh.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public final class FrameSampler extends AnimationTimer {
+
+    private static final long   REFRESH_INTERVAL = 16_666_667L;    // in nanoseconds, at 60 Hz
+    private static final long   MAX_INTERVAL     = 1_000_000_000L; // in nanoseconds
+    private static final long   RENDER_SHARE     = 4;              // rendering takes up at most 1 / RENDER_SHARE
+    private static final double SMOOTHING        = 0.25;           // the weight of the last cost in the average cost
+
+    private final AtomicReference<Runnable> pending  = new AtomicReference<>();
+    private final CountDownLatch            finished = new CountDownLatch(1);
+    private volatile boolean                finishing;
+    private volatile long                   nextFrame;   // the time at which the next frame is due
+    private long                            renderStart; // the time the last rendering started, 0 once it is costed
+    private double                          averageCost;
+
+    private FrameSampler() { }
+
+    /** @return a new sampler, started on the UI thread */
+    public static FrameSampler started() {
+        FrameSampler sampler = new FrameSampler();
+        Platform.runLater(sampler::start);
+        return sampler;
+    }
+
+    /**
+     * @return whether a frame published now would be shown on time: the last one has been shown, and the interval since
+     * it has passed. The algorithm's thread checks this first, so that it only makes the frames that will be shown.
+     */
+    public boolean isDue() { return pending.get() == null && System.nanoTime() >= nextFrame; }
+
+    /** Publishes a frame, which replaces any frame that has not been shown yet. */
+    public void publish(Runnable frame) { pending.set(frame); }
+
+    /**
+     * Publishes the last frame, which is shown on the next refresh whatever the interval, and waits until it is shown,
+     * after which the sampler stops. A run that is cancelled stops the sampler without waiting.
+     */
+    public void finish(Runnable frame) throws InterruptedException {
+        pending.set(frame);
+        finishing = true;
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Platform.runLater(this::stop);
+            throw e;
+        }
+    }
+
+    @Override
+    public void handle(long now) {
+        if (renderStart != 0) { // the last rendering and the refresh after it are done
+            long cost = Math.max(0, System.nanoTime() - renderStart - REFRESH_INTERVAL);
+            averageCost = averageCost == 0 ? cost : (1 - SMOOTHING) * averageCost + SMOOTHING * cost;
+            long interval = Math.min(MAX_INTERVAL, Math.max(REFRESH_INTERVAL, (long) averageCost * RENDER_SHARE));
+            nextFrame = renderStart + interval;
+            renderStart = 0;
+        }
+        boolean last = finishing;
+        if (!last && System.nanoTime() < nextFrame)
+            return;
+        Runnable frame = pending.getAndSet(null);
+        if (frame != null) {
+            renderStart = System.nanoTime();
+            frame.run();
+        }
+        if (last && pending.get() == null) {
+            stop();
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package ui;
+
+import algorithms.Algorithm;
+import algorithms.AlgorithmExecutor;
+import algorithms.Classifier;
+import algorithms.Clusterer;
+import algorithms.DataSet;
+import dataprocessors.AppData;
+import dataprocessors.TSDProcessor;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.TilePane;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.stage.Stage;
+import settings.AppPropertyTypes;
+import vilij.propertymanager.PropertyManager;
+import vilij.templates.ApplicationTemplate;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static settings.AppPropertyTypes.*;
+
+/**
+ * A workspace that runs several algorithms side by side on the loaded data, each in a chart of its own, so that their
+ * results can be compared in one pass rather than one run after another.
+ * <p>
+ * The data is read once into a single data set, which the runs share: each run works on a
+ * {@link DataSet#runView() view} of it, which shares its names and locations without copying them, and labels only
+ * its own copy of the labels. The runs are configured from the configuration windows of the main window, run at full
+ * speed on the {@link AlgorithmExecutor}, and each chart shows the latest state of its run through a
+ * {@link FrameSampler} of its own. Nothing is shown in the main window.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public class MultiRunWindow {
+
+    /** The algorithms, in the order of their rows in the main window: the name shown, and the name of the class. */
+    private static final AppPropertyTypes[][] ALGORITHMS = {
+            {RANDOM_CLASSIFICATION, RANDOMCLASSIFIER},
+            {RANDOM_CLUSTERING, RANDOMCLUSTERER},
+            {K_MEANS_CLUSTERING, KMEANSCLUSTERER},
+            {MINI_BATCH_K_MEANS_CLUSTERING, MINIBATCHKMEANSCLUSTERER},
+            {LINEAR_CLASSIFICATION, LINEARCLASSIFIER}
+    };
+
+    ApplicationTemplate applicationTemplate;
+
+    private Stage                      window         = new Stage();
+    private List<CheckBox>             algorithmBoxes = new ArrayList<>();
+    private Button                     runButton      = new Button();
+    private Button                     stopButton     = new Button();
+    private TilePane                   panes          = new TilePane(10, 10);
+    private Map<RunPane, Future<?>>    runs           = new HashMap<>(); // the runs that go on, on the UI thread
+
+    public MultiRunWindow(ApplicationTemplate applicationTemplate) {
+        this.applicationTemplate = applicationTemplate;
+    }
+
+    /** Shows the window, with the algorithms that the data and the configurations given so far allow. */
+    public void init() {
+        if (window.getScene() == null) {
+            layout();
+            setWorkspaceActions();
+        }
+        AppUI uiComponent = ((AppUI) applicationTemplate.getUIComponent());
+        boolean classification = ((AppData) applicationTemplate.getDataComponent()).getNumberOfLabels() == 2
+                                 && uiComponent.getClassificationWindow().hasGivenConfigClassification();
+        boolean clustering = uiComponent.getClusteringWindow().hasGivenConfigClustering();
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            boolean available = isClassifier(i) ? classification : clustering;
+            algorithmBoxes.get(i).setDisable(!available);
+            if (!available)
+                algorithmBoxes.get(i).setSelected(false);
+        }
+        window.show();
+        window.toFront();
+    }
+
+    /** Stops the runs and closes the window, as when the data they compare is replaced. */
+    public void close() {
+        cancelRuns();
+        window.hide();
+    }
+
+    private void layout() {
+        PropertyManager manager = applicationTemplate.manager;
+        window.setTitle(manager.getPropertyValue(MULTI_RUN_TITLE.name()));
+
+        HBox boxes = new HBox(10);
+        for (AppPropertyTypes[] algorithm : ALGORITHMS) {
+            CheckBox box = new CheckBox(manager.getPropertyValue(algorithm[0].name()));
+            algorithmBoxes.add(box);
+            boxes.getChildren().add(box);
+        }
+
+        runButton.setText(manager.getPropertyValue(RUN.name()));
+        stopButton.setText(manager.getPropertyValue(STOP.name()));
+        stopButton.setDisable(true);
+        HBox buttons = new HBox(10, runButton, stopButton);
+
+        VBox top = new VBox(10, boxes, buttons);
+        top.setPadding(new Insets(10));
+
+        panes.setPrefColumns(2);
+        panes.setPadding(new Insets(10));
+        ScrollPane scrollPane = new ScrollPane(panes);
+        scrollPane.setFitToWidth(true);
+
+        BorderPane pane = new BorderPane();
+        pane.setTop(top);
+        pane.setCenter(scrollPane);
+        window.setScene(new Scene(pane, 1000, 700));
+    }
+
+    private void setWorkspaceActions() {
+        runButton.setOnAction(event -> startRuns());
+        stopButton.setOnAction(event -> cancelRuns());
+        window.setOnCloseRequest(event -> cancelRuns());
+    }
+
+    private boolean isClassifier(int algorithm) {
+        String CLASSIFIER = applicationTemplate.manager.getPropertyValue(AppPropertyTypes.CLASSIFIER.name());
+        return applicationTemplate.manager.getPropertyValue(ALGORITHMS[algorithm][1].name()).contains(CLASSIFIER);
+    }
+
+    /** Starts a run of every selected algorithm, in place of the runs shown before. */
+    private void startRuns() {
+        AppData dataComponent = ((AppData) applicationTemplate.getDataComponent());
+        DataSet data;
+        try {
+            data = dataComponent.newDataSet();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        cancelRuns();
+        panes.getChildren().clear();
+        double[] bounds = bounds(data);
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            if (!algorithmBoxes.get(i).isSelected())
+                continue;
+            String name = applicationTemplate.manager.getPropertyValue(ALGORITHMS[i][0].name());
+            String filename = Algorithm.class.getPackage().getName() + "."
+                              + applicationTemplate.manager.getPropertyValue(ALGORITHMS[i][1].name());
+            Algorithm algorithm;
+            try {
+                algorithm = dataComponent.newAlgorithm(filename, data.runView());
+            } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                System.err.println(e.getMessage());
+                continue;
+            }
+            if (algorithm == null)
+                continue;
+            RunPane pane = new RunPane(name, algorithm, data, bounds);
+            panes.getChildren().add(pane.node);
+            runs.put(pane, AlgorithmExecutor.getExecutor().run(pane));
+        }
+        runButton.setDisable(!runs.isEmpty());
+        stopButton.setDisable(runs.isEmpty());
+    }
+
+    /** Cancels the runs, which end at their next iteration, or never start if they are still waiting for a thread. */
+    private void cancelRuns() {
+        runs.values().forEach(run -> run.cancel(true));
+        runs.clear();
+        runButton.setDisable(false);
+        stopButton.setDisable(true);
+    }
+
+    /** Counts a run as ended, on the UI thread, unless it was cancelled. */
+    private void ended(RunPane pane) {
+        if (runs.remove(pane) != null && runs.isEmpty()) {
+            runButton.setDisable(false);
+            stopButton.setDisable(true);
+        }
+    }
+
+    /** @return the smallest x, the largest x, the smallest y and the largest y of the instances */
+    private static double[] bounds(DataSet data) {
+        double[] bounds = {Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = 0; i < data.size(); i++) {
+            bounds[0] = Math.min(bounds[0], data.getX(i));
+            bounds[1] = Math.max(bounds[1], data.getX(i));
+            bounds[2] = Math.min(bounds[2], data.getY(i));
+            bounds[3] = Math.max(bounds[3], data.getY(i));
+        }
+        return bounds;
+    }
+
+    /**
+     * The chart of one run, and the task that drives the run: it iterates the algorithm on a thread of the executor, and
+     * publishes frames of its state, the clusters of a clusterer or the line of a classifier over the data, to the chart.
+     */
+    private final class RunPane implements Runnable {
+
+        private final String                    name;
+        private final Algorithm                 algorithm;
+        private final double[]                  bounds;
+        private final LineChart<Number, Number> chart;
+        private final Text                      status = new Text();
+        private final VBox                      node;
+        private XYChart.Series<Number, Number>  line;   // the line shown by the chart, on the UI thread
+
+        private RunPane(String name, Algorithm algorithm, DataSet data, double[] bounds) {
+            this.name = name;
+            this.algorithm = algorithm;
+            this.bounds = bounds;
+            NumberAxis xAxis = new NumberAxis();
+            NumberAxis yAxis = new NumberAxis();
+            xAxis.setForceZeroInRange(false);
+            yAxis.setForceZeroInRange(false);
+            chart = new LineChart<>(xAxis, yAxis);
+            chart.getStylesheets().add(getClass().getResource(applicationTemplate.manager.getPropertyValue(CHART_CSS.name())).toExternalForm());
+            chart.setTitle(String.format(applicationTemplate.manager.getPropertyValue(RUN_TITLE.name()), name, algorithm.getSeed()));
+            chart.setAnimated(false);
+            chart.setHorizontalGridLinesVisible(false);
+            chart.setVerticalGridLinesVisible(false);
+            chart.setPrefSize(460, 360);
+            if (algorithm instanceof Classifier) // the line is drawn over the data as it is labeled
+                showData(data);
+            node = new VBox(5, chart, status);
+        }
+
+        @Override
+        public void run() {
+            FrameSampler sampler = FrameSampler.started();
+            PropertyManager manager = applicationTemplate.manager;
+            int iteration = 0;
+            boolean converged = false;
+            try {
+                algorithm.prepare();
+                for (int i = 1; i <= algorithm.getMaxIterations() && !converged && !Thread.currentThread().isInterrupted(); i++) {
+                    converged = algorithm.iterate();
+                    iteration = i;
+                    if ((i % algorithm.getUpdateInterval() == 0 || converged) && sampler.isDue())
+                        sampler.publish(frame(String.format(manager.getPropertyValue(RUN_PROGRESS.name()), i)));
+                }
+                AppPropertyTypes end = converged ? RUN_CONVERGED : RUN_FINISHED;
+                sampler.finish(frame(String.format(manager.getPropertyValue(end.name()), iteration)));
+            } catch (InterruptedException e) {
+                String stopped = String.format(manager.getPropertyValue(RUN_STOPPED.name()), iteration);
+                Platform.runLater(() -> status.setText(stopped));
+            } finally {
+                Platform.runLater(() -> ended(this));
+            }
+        }
+
+        /**
+         * @return a rendering of the state of the run as it is now, and of its status, to be run on the UI thread, which
+         * is not affected by the iterations that run in the meantime
+         */
+        private Runnable frame(String text) {
+            if (algorithm instanceof Clusterer) {
+                DataSet labels = ((Clusterer) algorithm).labelSnapshot();
+                return () -> {
+                    chart.getData().clear();
+                    showData(labels);
+                    status.setText(text);
+                };
+            }
+            XYChart.Series<Number, Number> series = lineSeries(((Classifier) algorithm).getOutput());
+            return () -> {
+                if (series != null) {
+                    chart.getData().remove(line);
+                    chart.getData().add(series);
+                    line = series;
+                    series.getNode().lookup(applicationTemplate.manager.getPropertyValue(CHART_SERIES_LINE.name()))
+                          .setStyle(applicationTemplate.manager.getPropertyValue(AVG_SERIES_STROKE_WIDTH.name()));
+                    String bgColor = applicationTemplate.manager.getPropertyValue(AVG_SERIES_BG_COLOR.name());
+                    String chartLineSymbol = applicationTemplate.manager.getPropertyValue(CHART_LINE_SYMBOL.name());
+                    series.getData().forEach(data -> data.getNode().lookup(chartLineSymbol).setStyle(bgColor));
+                }
+                status.setText(text);
+            };
+        }
+
+        /** Shows the instances of the data set as one series per label, without lines between them. */
+        private void showData(DataSet data) {
+            TSDProcessor.toChartData(data, chart);
+            String nullStroke = applicationTemplate.manager.getPropertyValue(NULL_STROKE.name());
+            chart.getData().forEach(series -> series.getNode().setStyle(nullStroke));
+        }
+
+        /**
+         * @return the line <code>a x + b y = c</code> of the output across the data, or <code>null</code> if the
+         * output is not a line yet
+         */
+        private XYChart.Series<Number, Number> lineSeries(List<Integer> output) {
+            if (output == null || (output.get(0) == 0 && output.get(1) == 0))
+                return null;
+            double a = output.get(0);
+            double b = output.get(1);
+            double c = output.get(2);
+            XYChart.Series<Number, Number> series = new XYChart.Series<>();
+            series.setName(name);
+            if (Math.abs(b) <= 1e-9 * Math.abs(a)) { // vertical
+                series.getData().add(new XYChart.Data<>(c / a, bounds[2]));
+                series.getData().add(new XYChart.Data<>(c / a, bounds[3]));
+            } else {
+                series.getData().add(new XYChart.Data<>(bounds[0], (c - a * bounds[0]) / b));
+                series.getData().add(new XYChart.Data<>(bounds[1], (c - a * bounds[1]) / b));
+            }
+            return series;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package ui;
+
+import algorithms.Algorithm;
+import algorithms.AlgorithmExecutor;
+import algorithms.DataSet;
+import algorithms.KMeansClusterer;
+import dataprocessors.AppData;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.stage.Stage;
+import vilij.components.ErrorDialog;
+import vilij.propertymanager.PropertyManager;
+import vilij.templates.ApplicationTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+
+import static settings.AppPropertyTypes.*;
+
+/**
+ * Sweeps K Means over a grid of numbers of clusters and seeds, so that the number of clusters can be picked from one
+ * sweep instead of run after run. The runs of a sweep go on in parallel on the {@link AlgorithmExecutor}, at most one
+ * for each processor, on {@link DataSet#runView() views} of a single data set. Each run records the inertia of its
+ * clustering and how long it took.
+ * <p>
+ * The elbow plot shows the inertia of every run by its number of clusters, and the best run for each number of
+ * clusters; a run that fails is listed, but left out of the plot. Once the sweep is done, the best run at the elbow of
+ * the plot is selected. The selected run can be shown in the main window, and its number of clusters and seed are then
+ * configured there, so that a run of K Means repeats it. The runs do not keep their labels: the selected run is
+ * repeated to show its clusters.
+ * The other settings of the runs, such as their maximum number of iterations, are those of the clustering
+ * configuration.
+ *
+ * @author The author of this document is Lily Zhong.
+ */
+public class SweepWindow {
+
+    ApplicationTemplate applicationTemplate;
+
+    private Stage                     window       = new Stage();
+    private TextField                 kFromField   = new TextField("2");
+    private TextField                 kToField     = new TextField("10");
+    private TextField                 seedsField   = new TextField("2");
+    private Button                    runButton    = new Button();
+    private Button                    stopButton   = new Button();
+    private Button                    showButton   = new Button();
+    private LineChart<Number, Number> inertiaChart = new LineChart<>(new NumberAxis(), new NumberAxis());
+    private ListView<Result>          resultList   = new ListView<>();
+    private Text                      status       = new Text();
+    private List<Future<?>>           runs         = new ArrayList<>();
+    private int                       sweep;       // the number of the current sweep; the results of others are ignored
+    private int                       total;       // the number of runs of the current sweep
+    private DataSet                   data;        // the data of the current sweep, on which a selected run is repeated
+    private double                    tolerance;   // and the settings of its runs
+    private boolean                   accelerated;
+    private long                      start;       // when the current sweep started, in nanoseconds
+
+    /**
+     * The outcome of one run of a sweep, with what it takes to repeat the run. A failed run has no inertia, which is
+     * <code>NaN</code>.
+     */
+    private static final class Result {
+        private final int    k;
+        private final long   seed;
+        private final int    iterations;
+        private final double inertia;
+        private final String text;
+
+        private Result(int k, long seed, int iterations, double inertia, String text) {
+            this.k = k;
+            this.seed = seed;
+            this.iterations = iterations;
+            this.inertia = inertia;
+            this.text = text;
+        }
+
+        private boolean failed() { return Double.isNaN(inertia); }
+
+        @Override
+        public String toString() { return text; }
+    }
+
+    public SweepWindow(ApplicationTemplate applicationTemplate) {
+        this.applicationTemplate = applicationTemplate;
+    }
+
+    public void init() {
+        if (window.getScene() == null) {
+            layout();
+            setWorkspaceActions();
+        }
+        window.show();
+        window.toFront();
+    }
+
+    /** Stops the sweep and closes the window, as when the data it sweeps is replaced. */
+    public void close() {
+        cancelSweep();
+        resultList.getItems().clear();
+        inertiaChart.getData().clear();
+        status.setText("");
+        data = null;
+        window.hide();
+    }
+
+    private void layout() {
+        PropertyManager manager = applicationTemplate.manager;
+        window.setTitle(manager.getPropertyValue(SWEEP_TITLE.name()));
+
+        HBox fields = new HBox(10,
+                               new Label(manager.getPropertyValue(SWEEP_K_FROM.name())), kFromField,
+                               new Label(manager.getPropertyValue(SWEEP_K_TO.name())), kToField,
+                               new Label(manager.getPropertyValue(SWEEP_SEEDS.name())), seedsField);
+        kFromField.setPrefColumnCount(4);
+        kToField.setPrefColumnCount(4);
+        seedsField.setPrefColumnCount(4);
+        runButton.setText(manager.getPropertyValue(RUN.name()));
+        stopButton.setText(manager.getPropertyValue(STOP.name()));
+        stopButton.setDisable(true);
+        VBox top = new VBox(10, fields, new HBox(10, runButton, stopButton));
+        top.setPadding(new Insets(10));
+
+        inertiaChart.setTitle(manager.getPropertyValue(SWEEP_INERTIA.name()));
+        inertiaChart.setAnimated(false);
+        inertiaChart.getStylesheets().add(getClass().getResource(manager.getPropertyValue(CHART_CSS.name())).toExternalForm());
+        ((NumberAxis) inertiaChart.getXAxis()).setForceZeroInRange(false);
+        HBox.setHgrow(inertiaChart, Priority.ALWAYS);
+
+        showButton.setText(manager.getPropertyValue(SWEEP_SHOW.name()));
+        resultList.setPrefWidth(380);
+        VBox.setVgrow(resultList, Priority.ALWAYS);
+        VBox results = new VBox(10, resultList, showButton);
+        HBox center = new HBox(10, inertiaChart, results);
+        center.setPadding(new Insets(0, 10, 0, 10));
+
+        status.setWrappingWidth(960);
+        VBox bottom = new VBox(status);
+        bottom.setPadding(new Insets(10));
+
+        BorderPane pane = new BorderPane();
+        pane.setTop(top);
+        pane.setCenter(center);
+        pane.setBottom(bottom);
+        window.setScene(new Scene(pane, 1000, 600));
+    }
+
+    private void setWorkspaceActions() {
+        runButton.setOnAction(event -> startSweep());
+        stopButton.setOnAction(event -> cancelSweep());
+        showButton.setOnAction(event -> showSelected());
+        window.setOnCloseRequest(event -> cancelSweep());
+    }
+
+    /** Starts a run for every number of clusters and seed of the grid, in place of the sweep shown before. */
+    private void startSweep() {
+        PropertyManager manager = applicationTemplate.manager;
+        ConfigurationWindow configuration = ((AppUI) applicationTemplate.getUIComponent()).getClusteringWindow();
+        if (!configuration.hasGivenConfigClustering()) {
+            ErrorDialog.getDialog().show(manager.getPropertyValue(CONFIG_ERROR_TITLE.name()),
+                                         manager.getPropertyValue(SWEEP_CONFIG_MISSING.name()));
+            return;
+        }
+        int kFrom = parsePositive(kFromField.getText());
+        int kTo = parsePositive(kToField.getText());
+        int seeds = parsePositive(seedsField.getText());
+        if (kFrom < 2 || kTo < kFrom || seeds < 1) {
+            ErrorDialog.getDialog().show(manager.getPropertyValue(CONFIG_ERROR_TITLE.name()),
+                                         manager.getPropertyValue(SWEEP_ERROR_MESSAGE.name()));
+            return;
+        }
+        DataSet data;
+        try {
+            data = ((AppData) applicationTemplate.getDataComponent()).newDataSet();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        cancelSweep();
+        resultList.getItems().clear();
+        inertiaChart.getData().clear();
+        this.data = data;
+        tolerance = configuration.getTolerance();
+        accelerated = configuration.isAccelerated();
+
+        int maxIterations = configuration.getMaxIter();
+        // every number of clusters is run with the same seeds, so that they compare on the same footing
+        SplittableRandom seedSource = new SplittableRandom(configuration.getSeed().orElseGet(() -> new SplittableRandom().nextLong()));
+        long[] seedValues = new long[seeds];
+        for (int s = 0; s < seeds; s++)
+            seedValues[s] = seedSource.nextLong();
+        int sweep = ++this.sweep;
+        total = (kTo - kFrom + 1) * seeds;
+        // with at least a run per processor, the runs keep the processors busy by themselves
+        boolean parallel = total < Runtime.getRuntime().availableProcessors();
+        start = System.nanoTime();
+        for (int k = kFrom; k <= kTo; k++) {
+            for (long seed : seedValues) {
+                int clusters = k;
+                runs.add(AlgorithmExecutor.getExecutor().run(() -> {
+                    Result result;
+                    try {
+                        long started = System.nanoTime();
+                        KMeansClusterer clusterer = newClusterer(data, clusters, seed, maxIterations);
+                        if (!parallel)
+                            clusterer.setParallel(false);
+                        int iterations = iterate(clusterer, maxIterations);
+                        if (iterations < 0)
+                            return; // cancelled
+                        double inertia = clusterer.getInertia();
+                        long millis = (System.nanoTime() - started) / 1_000_000;
+                        String text = String.format(manager.getPropertyValue(SWEEP_RESULT.name()), clusters, seed, inertia, iterations, millis);
+                        result = new Result(clusters, seed, iterations, inertia, text);
+                    } catch (Throwable t) { // counted all the same, so that the sweep still ends
+                        String text = String.format(manager.getPropertyValue(SWEEP_RUN_FAILED.name()), clusters, seed, t);
+                        result = new Result(clusters, seed, 0, Double.NaN, text);
+                    }
+                    Result added = result;
+                    Platform.runLater(() -> added(sweep, added));
+                }));
+            }
+        }
+        runButton.setDisable(true);
+        stopButton.setDisable(false);
+        status.setText(String.format(manager.getPropertyValue(SWEEP_PROGRESS.name()), 0, total, 0));
+    }
+
+    /** @return a run of the current sweep */
+    private KMeansClusterer newClusterer(DataSet data, int clusters, long seed, int maxIterations) {
+        KMeansClusterer clusterer = new KMeansClusterer(data.runView(), applicationTemplate, maxIterations, maxIterations, true, clusters);
+        clusterer.setTolerance(tolerance);
+        clusterer.setSeed(seed);
+        clusterer.setAccelerated(accelerated);
+        return clusterer;
+    }
+
+    /** @return the number, or -1 if the text is not a whole number */
+    private static int parsePositive(String text) {
+        try {
+            return text.trim().matches("\\d+") ? Integer.parseInt(text.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Runs the algorithm until it converges, or up to its maximum number of iterations.
+     *
+     * @return the number of iterations run, or -1 if the run was cancelled
+     */
+    private static int iterate(Algorithm algorithm, int maxIterations) {
+        algorithm.prepare();
+        int iteration = 0;
+        boolean converged = false;
+        while (iteration < maxIterations && !converged) {
+            if (Thread.currentThread().isInterrupted())
+                return -1;
+            converged = algorithm.iterate();
+            iteration++;
+        }
+        return iteration;
+    }
+
+    private void cancelSweep() {
+        sweep++;
+        runs.forEach(run -> run.cancel(true));
+        runs.clear();
+        runButton.setDisable(false);
+        stopButton.setDisable(true);
+    }
+
+    /** Adds the result of a run of the sweep, on the UI thread, and selects the best run at the elbow once all are in. */
+    private void added(int sweep, Result result) {
+        if (sweep != this.sweep)
+            return;
+        List<Result> results = resultList.getItems();
+        results.add(result);
+        results.sort(Comparator.comparingInt((Result r) -> r.k).thenComparingDouble(r -> r.inertia));
+        TreeMap<Integer, Result> best = new TreeMap<>();
+        for (Result r : results)
+            if (!r.failed())
+                best.merge(r.k, r, (a, b) -> a.inertia <= b.inertia ? a : b);
+        showInertia(results, best);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        PropertyManager manager = applicationTemplate.manager;
+        if (results.size() < total) {
+            status.setText(String.format(manager.getPropertyValue(SWEEP_PROGRESS.name()), results.size(), total, millis));
+            return;
+        }
+        runs.clear();
+        runButton.setDisable(false);
+        stopButton.setDisable(true);
+        if (best.isEmpty()) {
+            status.setText(String.format(manager.getPropertyValue(SWEEP_ALL_FAILED.name()), total));
+            return;
+        }
+        Result elbow = best.get(elbow(best));
+        resultList.getSelectionModel().select(elbow);
+        resultList.scrollTo(elbow);
+        status.setText(String.format(manager.getPropertyValue(SWEEP_ELBOW.name()), total, millis, elbow.k));
+    }
+
+    /** Plots the inertia of every run, and the line of the best run for each number of clusters. */
+    private void showInertia(List<Result> results, TreeMap<Integer, Result> best) {
+        XYChart.Series<Number, Number> all = new XYChart.Series<>();
+        all.setName(applicationTemplate.manager.getPropertyValue(SWEEP_ALL_RUNS.name()));
+        results.stream().filter(r -> !r.failed()).forEach(r -> all.getData().add(new XYChart.Data<>(r.k, r.inertia)));
+        XYChart.Series<Number, Number> line = new XYChart.Series<>();
+        line.setName(applicationTemplate.manager.getPropertyValue(SWEEP_BEST_RUNS.name()));
+        best.values().forEach(r -> line.getData().add(new XYChart.Data<>(r.k, r.inertia)));
+        inertiaChart.getData().clear();
+        inertiaChart.getData().addAll(Arrays.asList(all, line));
+        all.getNode().setStyle(applicationTemplate.manager.getPropertyValue(NULL_STROKE.name()));
+    }
+
+    /**
+     * @return the number of clusters at the elbow of the best inertia by number of clusters: with both scaled to the
+     * unit square, the point farthest below the chord from the first point to the last, after which more clusters bring
+     * the inertia down by less. Without such a point, it is the number of clusters of the lowest inertia.
+     */
+    private static int elbow(TreeMap<Integer, Result> best) {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        int lowest = best.firstKey();
+        for (Result r : best.values()) {
+            if (r.inertia < min) {
+                min = r.inertia;
+                lowest = r.k;
+            }
+            max = Math.max(max, r.inertia);
+        }
+        if (best.size() < 3 || max == min)
+            return lowest;
+        int firstK = best.firstKey();
+        int lastK = best.lastKey();
+        double firstY = (best.get(firstK).inertia - min) / (max - min);
+        double lastY = (best.get(lastK).inertia - min) / (max - min);
+        int elbow = lowest;
+        double farthest = 0;
+        for (Map.Entry<Integer, Result> entry : best.entrySet()) {
+            double x = (double) (entry.getKey() - firstK) / (lastK - firstK);
+            double below = firstY + (lastY - firstY) * x - (entry.getValue().inertia - min) / (max - min);
+            if (below > farthest) {
+                farthest = below;
+                elbow = entry.getKey();
+            }
+        }
+        return elbow;
+    }
+
+    /**
+     * Shows the clusters of the selected run in the main window, and configures its number of clusters and seed. The run
+     * is repeated for its labels, in the background, with the same seed and as many iterations, which gives the same
+     * clusters.
+     */
+    private void showSelected() {
+        Result result = resultList.getSelectionModel().getSelectedItem();
+        AppData dataComponent = ((AppData) applicationTemplate.getDataComponent());
+        Algorithm algorithm = dataComponent.getAlgorithm();
+        if (result == null || result.failed() || data == null || (algorithm != null && !algorithm.finishedRunning()))
+            return; // the chart of the main window is the running algorithm's
+        ConfigurationWindow configuration = ((AppUI) applicationTemplate.getUIComponent()).getClusteringWindow();
+        KMeansClusterer clusterer = newClusterer(data, result.k, result.seed, result.iterations);
+        AlgorithmExecutor.getExecutor().run(() -> {
+            if (iterate(clusterer, result.iterations) < 0)
+                return; // cancelled
+            DataSet labels = clusterer.labelSnapshot();
+            Platform.runLater(() -> {
+                dataComponent.displayLabels(labels);
+                configuration.setClustering(result.k, result.seed);
+            });
+        });
+    }
+}